@@ -1,4 +1,2 @@
-# Keep Gson serialization
--keepattributes Signature
--keepattributes *Annotation*
--keep class com.visproj.parkingpermitsync.PermitData { *; }
+# PermitData is encoded by PermitCodec with Gson's streaming API only (no
+# reflection), so the model needs no keep rules and R8 may shrink/rename it.
@@ -8,10 +8,13 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AlarmReceiver extends BroadcastReceiver {
     private static final String TAG = "AlarmReceiver";
@@ -38,6 +41,16 @@ public class AlarmReceiver extends BroadcastReceiver {
     // Days after which reminder priority escalates
     private static final int ESCALATION_DAYS = 2;
 
+    // goAsync() gives a receiver ~10s before ANR; give up on the fetch well before that
+    private static final long SYNC_DEADLINE_MS = 8000;
+
+    // Wakeup outcomes recorded in Metrics as "wakeup.<type>.<outcome>"
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+    private static final String OUTCOME_TIMEOUT = "timeout";
+    private static final String OUTCOME_SHOWN = "shown";
+    private static final String OUTCOME_SKIPPED = "skipped";
+
     @Override
     public void onReceive(Context context, Intent intent) {
         String type = intent.getStringExtra(EXTRA_ALARM_TYPE);
@@ -53,27 +66,53 @@ public class AlarmReceiver extends BroadcastReceiver {
     private void handleSync(Context context) {
         Log.d(TAG, "3 AM sync triggered");
 
-        PermitRepository repo = new PermitRepository(context);
+        // Keep the process alive until the fetch finishes or the deadline passes
+        PendingResult pendingResult = goAsync();
+        long startTime = SystemClock.elapsedRealtime();
+        AtomicBoolean finished = new AtomicBoolean(false);
+        Handler handler = new Handler(Looper.getMainLooper());
+
+        PermitRepository repo = PermitRepository.getInstance(context);
         GitHubSyncTask syncTask = new GitHubSyncTask(context);
+
+        Runnable timeout = () -> {
+            if (finished.get()) return;
+            if (!syncTask.cancel()) {
+                // The permit is already being stored; that's a success, finished by onSuccess
+                Log.w(TAG, "Sync exceeded " + SYNC_DEADLINE_MS + " ms while saving, letting it finish");
+                return;
+            }
+            if (!finished.compareAndSet(false, true)) return;
+            Log.w(TAG, "Sync exceeded " + SYNC_DEADLINE_MS + " ms, cancelled");
+            recordSyncFailure(context, repo);
+            finishWakeup(context, pendingResult, TYPE_SYNC, OUTCOME_TIMEOUT, startTime);
+        };
+        handler.postDelayed(timeout, SYNC_DEADLINE_MS);
+
         syncTask.sync(new GitHubSyncTask.SyncCallback() {
             @Override
             public void onSuccess(PermitData permit, boolean isNew) {
+                if (!finished.compareAndSet(false, true)) return;
+                handler.removeCallbacks(timeout);
                 Log.d(TAG, "Sync successful: " + permit.permitNumber + " (new=" + isNew + ")");
-                repo.resetSyncFailures();
+                PermitRepository.Transaction tx = repo.edit().resetSyncFailures();
+                if (isNew) {
+                    tx.setNewPermitDetectedTime(System.currentTimeMillis());
+                }
+                tx.commit();
                 if (isNew) {
-                    repo.setNewPermitDetectedTime(System.currentTimeMillis());
                     showNewPermitNotification(context, permit);
                 }
+                finishWakeup(context, pendingResult, TYPE_SYNC, OUTCOME_SUCCESS, startTime);
             }
 
             @Override
             public void onError(String error) {
+                if (!finished.compareAndSet(false, true)) return;
+                handler.removeCallbacks(timeout);
                 Log.e(TAG, "Sync failed: " + error);
-                repo.incrementSyncFailures();
-                int failures = repo.getConsecutiveSyncFailures();
-                if (failures >= FAILURE_THRESHOLD) {
-                    showSyncFailureNotification(context, failures);
-                }
+                recordSyncFailure(context, repo);
+                finishWakeup(context, pendingResult, TYPE_SYNC, OUTCOME_ERROR, startTime);
             }
         });
 
@@ -81,28 +120,51 @@ public class AlarmReceiver extends BroadcastReceiver {
         scheduleAlarm(context, SYNC_HOUR, REQUEST_SYNC, TYPE_SYNC);
     }
 
+    private static void recordSyncFailure(Context context, PermitRepository repo) {
+        int failures = repo.incrementSyncFailures();
+        if (failures >= FAILURE_THRESHOLD) {
+            showSyncFailureNotification(context, failures);
+        }
+    }
+
+    // Record how the wakeup ended and how long it held the CPU, then release the receiver
+    private static void finishWakeup(Context context, PendingResult pendingResult,
+                                     String type, String outcome, long startTime) {
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        Log.d(TAG, "Wakeup " + type + " finished: " + outcome + " in " + duration + " ms");
+
+        Metrics metrics = Metrics.getInstance(context);
+        metrics.increment("wakeup." + type + "." + outcome);
+        metrics.recordDuration("wakeup." + type + ".duration", duration);
+
+        if (pendingResult != null) {
+            pendingResult.finish();
+        }
+    }
+
     private void handleReminder(Context context) {
-        PermitRepository repo = new PermitRepository(context);
+        long startTime = SystemClock.elapsedRealtime();
+        String outcome = showReminderIfNeeded(context) ? OUTCOME_SHOWN : OUTCOME_SKIPPED;
+        finishWakeup(context, null, TYPE_REMINDER, outcome, startTime);
+    }
+
+    private boolean showReminderIfNeeded(Context context) {
+        PermitRepository repo = PermitRepository.getInstance(context);
 
         if (!repo.isRemindersEnabled()) {
             Log.d(TAG, "Reminders disabled, skipping");
-            return;
+            return false;
         }
 
-        if (!repo.isDisplayOutOfSync()) {
+        // Days behind comes from the lifecycle's precomputed timeline
+        long daysSinceNew = PermitLifecycle.getInstance(context).snapshot().daysBehind;
+        if (daysSinceNew < 0) {
             Log.d(TAG, "Display is in sync, no reminder needed");
-            return;
-        }
-
-        long detectedTime = repo.getNewPermitDetectedTime();
-        long daysSinceNew = 0;
-        if (detectedTime > 0) {
-            daysSinceNew = TimeUnit.MILLISECONDS.toDays(
-                System.currentTimeMillis() - detectedTime);
+            return false;
         }
 
         PermitData permit = repo.getPermit();
-        if (permit == null) return;
+        if (permit == null) return false;
 
         boolean escalate = daysSinceNew >= ESCALATION_DAYS;
         Log.d(TAG, "Reminder: display out of sync for " + daysSinceNew + " days, escalated=" + escalate);
@@ -112,6 +174,7 @@ public class AlarmReceiver extends BroadcastReceiver {
         // Reschedule both reminders so they survive Samsung alarm kills
         scheduleAlarm(context, REMINDER_AM_HOUR, REQUEST_REMINDER_AM, TYPE_REMINDER);
         scheduleAlarm(context, REMINDER_PM_HOUR, REQUEST_REMINDER_PM, TYPE_REMINDER);
+        return true;
     }
 
     // --- Scheduling ---
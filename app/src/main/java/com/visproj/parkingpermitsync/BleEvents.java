@@ -0,0 +1,57 @@
+package com.visproj.parkingpermitsync;
+
+// What BleGattService reports, as seen in the main process. The service runs in the
+// ":ble" process; PermitProvider relays its reports onto these buses.
+public final class BleEvents {
+
+    // Sticky: a subscriber always starts from the current service/connection state
+    public static final class State {
+        public static final State STOPPED = new State(false, false);
+
+        public final boolean serviceRunning;
+        public final boolean displayConnected;
+
+        State(boolean serviceRunning, boolean displayConnected) {
+            this.serviceRunning = serviceRunning;
+            this.displayConnected = displayConnected;
+        }
+
+        public State withServiceRunning(boolean running) {
+            return running == serviceRunning ? this : new State(running, running && displayConnected);
+        }
+
+        public State withDisplayConnected(boolean connected) {
+            return connected == displayConnected ? this : new State(serviceRunning, connected);
+        }
+    }
+
+    // The display read the permit (first chunk); every read is delivered
+    public static final class PermitRead {
+        public final boolean isNewPermit;
+
+        public PermitRead(boolean isNewPermit) {
+            this.isNewPermit = isNewPermit;
+        }
+    }
+
+    // The display acked what it read: the permit is on screen and already recorded
+    public static final class DisplayAcked {
+        public final String permitNumber;
+        public final boolean isNewPermit;
+        public final int batteryPercent;   // DisplayAck.BATTERY_UNKNOWN if not reported
+        public final long renderMillis;
+
+        public DisplayAcked(String permitNumber, boolean isNewPermit, int batteryPercent, long renderMillis) {
+            this.permitNumber = permitNumber;
+            this.isNewPermit = isNewPermit;
+            this.batteryPercent = batteryPercent;
+            this.renderMillis = renderMillis;
+        }
+    }
+
+    public static final EventBus<State> STATE = EventBus.sticky(State.STOPPED);
+    public static final EventBus<PermitRead> PERMIT_READ = EventBus.events();
+    public static final EventBus<DisplayAcked> DISPLAY_ACKED = EventBus.events();
+
+    private BleEvents() {}
+}
@@ -10,29 +10,41 @@ import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattServer;
 import android.bluetooth.BluetoothGattServerCallback;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.AdvertiseCallback;
 import android.bluetooth.le.AdvertiseData;
-import android.bluetooth.le.AdvertiseSettings;
+import android.bluetooth.le.AdvertisingSet;
+import android.bluetooth.le.AdvertisingSetCallback;
+import android.bluetooth.le.AdvertisingSetParameters;
 import android.bluetooth.le.BluetoothLeAdvertiser;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ServiceInfo;
 import android.os.Build;
 import android.os.IBinder;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class BleGattService extends Service {
     private static final String TAG = "BleGattService";
@@ -42,12 +54,28 @@ public class BleGattService extends Service {
     public static final String ACTION_DEVICE_CONNECTED = "com.visproj.parkingpermitsync.DEVICE_CONNECTED";
     public static final String ACTION_DEVICE_DISCONNECTED = "com.visproj.parkingpermitsync.DEVICE_DISCONNECTED";
     public static final String ACTION_PERMIT_READ = "com.visproj.parkingpermitsync.PERMIT_READ";
+    public static final String ACTION_SERVICE_STOPPED = "com.visproj.parkingpermitsync.SERVICE_STOPPED";
 
     // BLE UUIDs - ESP32 will use these to find and read permit data
     // Using standard Bluetooth Base UUID format for better compatibility
     public static final UUID SERVICE_UUID = UUID.fromString("0000ff00-0000-1000-8000-00805f9b34fb");
     public static final UUID PERMIT_CHAR_UUID = UUID.fromString("0000ff01-0000-1000-8000-00805f9b34fb");
     public static final UUID SYNC_TYPE_CHAR_UUID = UUID.fromString("0000ff02-0000-1000-8000-00805f9b34fb");
+    // The display writes a DisplayAck here once the permit is actually on screen
+    public static final UUID ACK_CHAR_UUID = UUID.fromString("0000ff03-0000-1000-8000-00805f9b34fb");
+    // Display settings (DisplaySettings), read on their own so a flip needs no permit re-read
+    public static final UUID SETTINGS_CHAR_UUID = UUID.fromString("0000ff04-0000-1000-8000-00805f9b34fb");
+    // The display writes the hash of the payload it has (4 bytes, little-endian), then
+    // reads a PermitDelta against it here; an unknown base gets the full payload instead
+    public static final UUID DELTA_CHAR_UUID = UUID.fromString("0000ff05-0000-1000-8000-00805f9b34fb");
+    // Service data key of the broadcast set (PermitBroadcast), advertised in broadcast mode
+    public static final UUID BROADCAST_UUID = UUID.fromString("0000ff06-0000-1000-8000-00805f9b34fb");
+    // Persistent link: the display subscribes here and is notified with the SyncBeacon
+    // bytes whenever they change, then reads whatever it is missing
+    public static final UUID CHANGE_CHAR_UUID = UUID.fromString("0000ff07-0000-1000-8000-00805f9b34fb");
+    // The display writes its DisplayCapabilities here; a read returns the phone's
+    public static final UUID CAPS_CHAR_UUID = UUID.fromString("0000ff08-0000-1000-8000-00805f9b34fb");
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
 
     // Sync types - ESP32 writes this before reading permit
     private static final byte SYNC_TYPE_AUTO = 1;    // Reboot/auto sync - no notification if same permit
@@ -60,27 +88,188 @@ public class BleGattService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private static final int SYNC_NOTIFICATION_ID = 2;
 
+    // Broadcast payload version, kept by this process alone so it survives restarts
+    private static final String BROADCAST_PREFS = "ble_broadcast";
+    private static final String KEY_BROADCAST_VERSION = "version";
+    private static final String KEY_BROADCAST_CONTENT = "content_hash";
+    // Length, type and 16-bit UUID in front of the service data
+    private static final int SERVICE_DATA_OVERHEAD = 4;
+
     private BluetoothManager bluetoothManager;
     private BluetoothAdapter bluetoothAdapter;
     private BluetoothLeAdvertiser advertiser;
     private BluetoothGattServer gattServer;
-    private PermitRepository repository;
+    // Runs in the ":ble" process: the permit store lives in the main process
+    private PermitStoreClient store;
+
+    // Permit read characteristic value (PermitSlots). The display reads it in 512-byte
+    // chunks, so it is encoded once per permit pair, flip setting and slot boundary
+    // instead of once per chunk. The flip also has its own settings characteristic, but
+    // firmware without FEATURE_SETTINGS only ever sees it here.
+    private static final class Payload {
+        final ParsedPermit fetched;
+        final ParsedPermit previous;
+        final PermitSlots slots;
+        final boolean flipped;
+        final PermitData permit;   // newest permit served; what an ack records
+        final byte[] data;
+        final int hash;   // what the display's ack must carry
+        final byte[] binary;   // PermitBroadcast form (version 0), null if it doesn't fit
+
+        Payload(ParsedPermit fetched, ParsedPermit previous, PermitSlots slots, boolean flipped) {
+            this.fetched = fetched;
+            this.previous = previous;
+            this.slots = slots;
+            this.flipped = flipped;
+            ParsedPermit newest = slots.newest();
+            this.permit = newest != null ? newest.permit : null;
+            this.data = slots.encode(flipped);
+            this.hash = DisplayAck.hash(data);
+            this.binary = PermitBroadcast.encode(slots, 0, hash, flipped);
+        }
+    }
 
-    private boolean isAdvertising = false;
-    private static boolean isRunning = false;
+    // Every display's payload is built from the same slots, so the beacon and change
+    // notifications describe it whatever is connected. A display without FEATURE_SLOTS
+    // is served legacyPayload instead: the newest permit on its own.
+    private volatile Payload payload;
+    private volatile Payload legacyPayload;
+
+    // A permit read whose ack has not arrived yet. For a display that announced
+    // FEATURE_ACK nothing is recorded as being on it until it acks this exact payload.
+    private static final class PendingAck {
+        final Payload payload;
+        final boolean isNewPermit;
+        final byte syncType;
+        final long readAt;   // elapsedRealtime of the first chunk
+
+        PendingAck(Payload payload, boolean isNewPermit, byte syncType, long readAt) {
+            this.payload = payload;
+            this.isNewPermit = isNewPermit;
+            this.syncType = syncType;
+            this.readAt = readAt;
+        }
+    }
+
+    // Last payload the display acked: the usual base for its next delta
+    private volatile Payload ackedPayload;
+
+    private static final long NO_BASE = -1;
+
+    // Per-connection state, keyed by device address. With the persistent link on, one
+    // display can hold its connection while another wakes and syncs.
+    private static final class Link {
+        // What this display can take: cached from an earlier connection until it writes
+        // its own, LEGACY for a display never seen before
+        volatile DisplayCapabilities capabilities;
+        volatile PendingAck pendingAck;
+        // Base hash the display wrote to the delta characteristic (unsigned)
+        volatile long deltaBaseHash = NO_BASE;
+
+        Link(DisplayCapabilities capabilities) {
+            this.capabilities = capabilities;
+        }
+    }
+
+    private final Map<String, Link> links = new ConcurrentHashMap<>();
+
+    // Delta characteristic value, kept for the chunked reads of one transfer
+    private static final class Delta {
+        final Payload target;
+        final long baseHash;
+        final byte[] data;
+        final boolean full;   // base unknown: data is the full payload
+
+        Delta(Payload target, long baseHash, byte[] data, boolean full) {
+            this.target = target;
+            this.baseHash = baseHash;
+            this.data = data;
+            this.full = full;
+        }
+    }
+
+    private volatile Delta delta;
+
+    // Displays subscribed to the change characteristic
+    private final Set<BluetoothDevice> subscribers = new CopyOnWriteArraySet<>();
+    private BluetoothGattCharacteristic changeChar;
+    private byte[] notifiedBeacon;   // only touched on beaconExecutor
+
+    // A new permit pushed to a subscriber, timed until the display acks it
+    private static final class PushedPermit {
+        final String permitNumber;
+        final long fetchedAt;   // wall clock, 0 if unknown
+        final long pushedAt;    // elapsedRealtime
 
-    public static boolean isServiceRunning() {
-        return isRunning;
+        PushedPermit(String permitNumber, long fetchedAt, long pushedAt) {
+            this.permitNumber = permitNumber;
+            this.fetchedAt = fetchedAt;
+            this.pushedAt = pushedAt;
+        }
     }
 
+    private volatile PushedPermit pushedPermit;
+
+    private CapabilityCache capabilityCache;
+
+    private final MemoryRegistry.Trimmable payloadMemory = new MemoryRegistry.Trimmable() {
+        @Override
+        public long bytesHeld() {
+            Delta currentDelta = delta;
+            return bytesHeld(payload) + bytesHeld(legacyPayload)
+                + (currentDelta != null && !currentDelta.full ? 16 + currentDelta.data.length : 0);
+        }
+
+        @Override
+        public void shrink() {
+        }
+
+        @Override
+        public void clear() {
+            payload = null;
+            legacyPayload = null;
+            delta = null;
+        }
+
+        private long bytesHeld(Payload current) {
+            return current != null
+                ? 32 + current.data.length + (current.binary != null ? current.binary.length : 0) : 0;
+        }
+    };
+
+    private boolean isAdvertising = false;
+    // Started through the advertising set API so its data can be swapped in place when
+    // the store changes (see SyncBeacon), without stopping and restarting advertising
+    private volatile AdvertisingSet advertisingSet;
+    // Whether that set uses extended PDUs (see startAdvertising)
+    private volatile boolean extendedAdvertising;
+    private byte[] advertisedBeacon;   // only touched on beaconExecutor
+    // Building the beacon may need a round trip to the main process, so not on main.
+    // The broadcast set is managed there too.
+    private final ExecutorService beaconExecutor = Executors.newSingleThreadExecutor();
+
+    // Broadcast mode: a second, non-connectable extended set carrying the whole permit.
+    // The connectable set above always stays up, for displays that can't use it and for
+    // acks, deltas and anything that doesn't fit.
+    private volatile AdvertisingSet broadcastSet;
+    private volatile boolean broadcastStarting = false;
+    private byte[] broadcastData;        // last handed to the controller; beaconExecutor only
+    private boolean broadcastFallback;   // beaconExecutor only, counts each fallback once
+
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Service created");
 
-        repository = new PermitRepository(this);
+        store = new PermitStoreClient(this);
+        store.setChangeListener(this::refreshAdvertisement);
+        store.start();
+        capabilityCache = new CapabilityCache(this);
         bluetoothManager = (BluetoothManager) getSystemService(BLUETOOTH_SERVICE);
         bluetoothAdapter = bluetoothManager.getAdapter();
+        // Cheap to rebuild on the next read, so it goes as soon as memory gets tight
+        MemoryRegistry.getInstance().register("ble_payload", payloadMemory,
+            null, MemoryRegistry.Pressure.MODERATE);
 
         createNotificationChannel();
     }
@@ -88,11 +277,12 @@ public class BleGattService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Service started");
-        isRunning = true;
-        sendBroadcast(ACTION_SERVICE_RUNNING);
+        store.sendEvent(ACTION_SERVICE_RUNNING);
 
         startForeground();
         startBleServer();
+        // Footprint of this process with the GATT server up, without any UI
+        Metrics.getInstance(this).recordPss("memory.ble_service");
 
         return START_STICKY;
     }
@@ -152,8 +342,41 @@ public class BleGattService extends Service {
                 BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
                 BluetoothGattCharacteristic.PERMISSION_WRITE);
 
+            BluetoothGattCharacteristic ackChar = new BluetoothGattCharacteristic(
+                ACK_CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE,
+                BluetoothGattCharacteristic.PERMISSION_WRITE);
+
+            BluetoothGattCharacteristic settingsChar = new BluetoothGattCharacteristic(
+                SETTINGS_CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ,
+                BluetoothGattCharacteristic.PERMISSION_READ);
+
+            BluetoothGattCharacteristic deltaChar = new BluetoothGattCharacteristic(
+                DELTA_CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ | BluetoothGattCharacteristic.PROPERTY_WRITE,
+                BluetoothGattCharacteristic.PERMISSION_READ | BluetoothGattCharacteristic.PERMISSION_WRITE);
+
+            // Readable too, so a display can fetch the current value when it subscribes
+            changeChar = new BluetoothGattCharacteristic(
+                CHANGE_CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ | BluetoothGattCharacteristic.PROPERTY_NOTIFY,
+                BluetoothGattCharacteristic.PERMISSION_READ);
+            changeChar.addDescriptor(new BluetoothGattDescriptor(CCCD_UUID,
+                BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE));
+
+            BluetoothGattCharacteristic capsChar = new BluetoothGattCharacteristic(
+                CAPS_CHAR_UUID,
+                BluetoothGattCharacteristic.PROPERTY_READ | BluetoothGattCharacteristic.PROPERTY_WRITE,
+                BluetoothGattCharacteristic.PERMISSION_READ | BluetoothGattCharacteristic.PERMISSION_WRITE);
+
             service.addCharacteristic(permitChar);
             service.addCharacteristic(syncTypeChar);
+            service.addCharacteristic(ackChar);
+            service.addCharacteristic(settingsChar);
+            service.addCharacteristic(deltaChar);
+            service.addCharacteristic(changeChar);
+            service.addCharacteristic(capsChar);
             gattServer.addService(service);
 
             Log.d(TAG, "GATT server started");
@@ -178,46 +401,308 @@ public class BleGattService extends Service {
             return;
         }
 
-        AdvertiseSettings settings = new AdvertiseSettings.Builder()
-            .setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_LOW_LATENCY)
-            .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_HIGH)
+        // Extended PDUs only where the adapter has them and every display seen so far
+        // scans them: FEATURE_BROADCAST firmware already reads the extended broadcast
+        // set. Otherwise legacy PDUs, which every display can scan, as before. Decided
+        // here, so a display that joins later is picked up on the next start.
+        startAdvertisingSet(bluetoothAdapter.isLeExtendedAdvertisingSupported()
+            && capabilityCache.allSupport(DisplayCapabilities.FEATURE_BROADCAST));
+    }
+
+    // Same 100 ms interval as ADVERTISE_MODE_LOW_LATENCY either way
+    private void startAdvertisingSet(boolean extended) {
+        extendedAdvertising = extended;
+        AdvertisingSetParameters.Builder parameters = new AdvertisingSetParameters.Builder()
             .setConnectable(true)
-            .setTimeout(0)  // Advertise indefinitely
-            .build();
+            .setInterval(AdvertisingSetParameters.INTERVAL_LOW)
+            .setTxPowerLevel(AdvertisingSetParameters.TX_POWER_HIGH);
+        AdvertiseData scanResponse;
+        if (extended) {
+            // A connectable extended set can't be scannable; the name fits in the data
+            parameters.setLegacyMode(false)
+                .setScannable(false)
+                .setPrimaryPhy(BluetoothDevice.PHY_LE_1M)
+                .setSecondaryPhy(BluetoothDevice.PHY_LE_1M);
+            scanResponse = null;
+        } else {
+            parameters.setLegacyMode(true)
+                .setScannable(true);
+            // The name moved to the scan response to leave room for the service data
+            scanResponse = new AdvertiseData.Builder()
+                .setIncludeDeviceName(true)
+                .build();
+        }
 
-        AdvertiseData advertiseData = new AdvertiseData.Builder()
-            .setIncludeDeviceName(true)
+        // Placeholder until the set is up and the real beacon is built off the main
+        // thread; a display seeing it just connects as it always did
+        byte[] beacon = SyncBeacon.encode(0, 0, false, false);
+
+        Log.d(TAG, "Starting " + (extended ? "extended" : "legacy")
+            + " BLE advertising with UUID: " + SERVICE_UUID.toString());
+
+        try {
+            advertiser.startAdvertisingSet(parameters.build(), advertiseData(beacon, extended),
+                scanResponse, null, null, advertisingSetCallback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception starting advertising", e);
+        }
+    }
+
+    private static AdvertiseData advertiseData(byte[] beacon, boolean includeName) {
+        return new AdvertiseData.Builder()
+            .setIncludeDeviceName(includeName)
             .setIncludeTxPowerLevel(false)
             .addServiceUuid(new ParcelUuid(SERVICE_UUID))
+            .addServiceData(new ParcelUuid(SERVICE_UUID), beacon)
             .build();
+    }
 
-        AdvertiseData scanResponse = new AdvertiseData.Builder()
-            .setIncludeDeviceName(false)
-            .addServiceUuid(new ParcelUuid(SERVICE_UUID))
-            .build();
+    private byte[] currentBeacon() {
+        return SyncBeacon.encode(permitPayload().hash, store.getDisplaySettingsVersion(),
+            store.isDisplayFlipped(), store.isPersistentLinkEnabled());
+    }
+
+    // Once a set is up and whenever the main process reports a store change
+    private void refreshAdvertisement() {
+        try {
+            beaconExecutor.execute(() -> {
+                refreshBeacon();
+                refreshBroadcast();
+            });
+        } catch (RejectedExecutionException e) {
+            // Service is shutting down
+        }
+    }
+
+    // Only on beaconExecutor
+    private void refreshBeacon() {
+        AdvertisingSet set = advertisingSet;
+        if (set == null && subscribers.isEmpty()) return;
+        byte[] beacon = currentBeacon();
+        // Most changes (e.g. a sync time) don't touch what is advertised
+        if (set != null && !Arrays.equals(beacon, advertisedBeacon)) {
+            advertisedBeacon = beacon;
+            try {
+                set.setAdvertisingData(advertiseData(beacon, extendedAdvertising));
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security exception updating advertising data", e);
+            }
+        }
+        if (!subscribers.isEmpty() && !Arrays.equals(beacon, notifiedBeacon)) {
+            notifiedBeacon = beacon;
+            notifySubscribers(beacon);
+        }
+    }
+
+    // Only on beaconExecutor. A display subscribing reads the current value itself, so
+    // only changes after that are pushed.
+    private void notifySubscribers(byte[] beacon) {
+        // A permit the display doesn't have yet: time it until the display acks it
+        PermitData newest = permitPayload().permit;
+        if (newest != null && !newest.permitNumber.equals(store.getDisplayPermitNumber())) {
+            PushedPermit pushed = pushedPermit;
+            if (pushed == null || !pushed.permitNumber.equals(newest.permitNumber)) {
+                pushedPermit = new PushedPermit(newest.permitNumber, store.getPermitFetchedTime(),
+                    SystemClock.elapsedRealtime());
+            }
+        }
 
-        Log.d(TAG, "Starting BLE advertising with UUID: " + SERVICE_UUID.toString());
+        // The read this triggers is automatic unless the display writes otherwise
+        pendingSyncType = SYNC_TYPE_AUTO;
 
+        Metrics metrics = Metrics.getInstance(this);
+        for (BluetoothDevice device : subscribers) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                    gattServer.notifyCharacteristicChanged(device, changeChar, false, beacon);
+                } else {
+                    changeChar.setValue(beacon);
+                    gattServer.notifyCharacteristicChanged(device, changeChar, false);
+                }
+                metrics.increment("ble.push_sent");
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security exception sending change notification", e);
+            }
+        }
+        Log.d(TAG, "Change notification sent to " + subscribers.size() + " display(s)");
+    }
+
+    // Only on beaconExecutor
+    private void refreshBroadcast() {
+        if (advertisingSet == null) return;
+        byte[] data = store.isBroadcastModeEnabled() ? broadcastPayload() : null;
+        if (data == null) {
+            stopBroadcast();
+            return;
+        }
+        AdvertisingSet set = broadcastSet;
+        // Still starting: its started callback refreshes again
+        if (set == null && broadcastStarting) return;
+        if (set != null && Arrays.equals(data, broadcastData)) return;
+
+        broadcastData = data;
+        Metrics.getInstance(this).set("ble.broadcast_bytes", data.length);
         try {
-            advertiser.startAdvertising(settings, advertiseData, scanResponse, advertiseCallback);
+            if (set != null) {
+                set.setAdvertisingData(broadcastAdvertiseData(data));
+            } else {
+                broadcastStarting = true;
+                AdvertisingSetParameters parameters = new AdvertisingSetParameters.Builder()
+                    .setLegacyMode(false)
+                    .setConnectable(false)
+                    .setScannable(false)
+                    .setPrimaryPhy(BluetoothDevice.PHY_LE_1M)
+                    .setSecondaryPhy(BluetoothDevice.PHY_LE_1M)
+                    .setInterval(AdvertisingSetParameters.INTERVAL_MEDIUM)
+                    .setTxPowerLevel(AdvertisingSetParameters.TX_POWER_HIGH)
+                    .build();
+                advertiser.startAdvertisingSet(parameters, broadcastAdvertiseData(data), null,
+                    null, null, broadcastCallback);
+            }
         } catch (SecurityException e) {
-            Log.e(TAG, "Security exception starting advertising", e);
+            broadcastStarting = false;
+            Log.e(TAG, "Security exception updating broadcast", e);
+        }
+    }
+
+    // What the broadcast set should carry, or null to leave it to the connectable path
+    private byte[] broadcastPayload() {
+        if (!bluetoothAdapter.isLeExtendedAdvertisingSupported()) {
+            return broadcastFallback("no extended advertising");
+        }
+        if (!capabilityCache.anySupports(DisplayCapabilities.FEATURE_BROADCAST)) {
+            return broadcastFallback("no display reads the broadcast set");
+        }
+        Payload current = permitPayload();
+        byte[] probe = current.binary;
+        if (probe == null) {
+            return broadcastFallback("permit not in the compact format");
+        }
+
+        // Version only moves when the content does, so a restart doesn't look like news
+        int content = DisplayAck.hash(probe);
+        SharedPreferences prefs = getSharedPreferences(BROADCAST_PREFS, MODE_PRIVATE);
+        int version = prefs.getInt(KEY_BROADCAST_VERSION, 0);
+        if (!prefs.contains(KEY_BROADCAST_CONTENT) || prefs.getInt(KEY_BROADCAST_CONTENT, 0) != content) {
+            version = (version + 1) & 0xFFFF;
+            prefs.edit()
+                .putInt(KEY_BROADCAST_VERSION, version)
+                .putInt(KEY_BROADCAST_CONTENT, content)
+                .apply();
+        }
+
+        byte[] data = PermitBroadcast.encode(current.slots, version, current.hash, current.flipped);
+        if (data.length + SERVICE_DATA_OVERHEAD > bluetoothAdapter.getLeMaximumAdvertisingDataLength()) {
+            return broadcastFallback(data.length + " bytes don't fit");
+        }
+        broadcastFallback = false;
+        return data;
+    }
+
+    private byte[] broadcastFallback(String reason) {
+        if (!broadcastFallback) {
+            broadcastFallback = true;
+            Log.d(TAG, "Broadcast mode falling back to connections: " + reason);
+            Metrics.getInstance(this).increment("ble.broadcast_fallback");
+        }
+        return null;
+    }
+
+    // Only on beaconExecutor (and onDestroy, once it has shut down)
+    private void stopBroadcast() {
+        broadcastData = null;
+        if (broadcastSet == null && !broadcastStarting) return;
+        broadcastSet = null;
+        broadcastStarting = false;
+        try {
+            advertiser.stopAdvertisingSet(broadcastCallback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception stopping broadcast", e);
         }
     }
 
-    private final AdvertiseCallback advertiseCallback = new AdvertiseCallback() {
+    private static AdvertiseData broadcastAdvertiseData(byte[] data) {
+        return new AdvertiseData.Builder()
+            .setIncludeDeviceName(false)
+            .setIncludeTxPowerLevel(false)
+            .addServiceData(new ParcelUuid(BROADCAST_UUID), data)
+            .build();
+    }
+
+    private final AdvertisingSetCallback broadcastCallback = new AdvertisingSetCallback() {
+        @Override
+        public void onAdvertisingSetStarted(AdvertisingSet set, int txPower, int status) {
+            if (!broadcastStarting) return;   // stopped meanwhile
+            broadcastStarting = false;
+            Metrics metrics = Metrics.getInstance(BleGattService.this);
+            if (status != AdvertisingSetCallback.ADVERTISE_SUCCESS) {
+                // Tried again on the next store change
+                Log.e(TAG, "Broadcast advertising failed: " + status);
+                metrics.increment("ble.broadcast_fallback");
+                return;
+            }
+            broadcastSet = set;
+            Log.d(TAG, "Broadcast advertising started");
+            metrics.increment("ble.broadcast_refresh");
+            // Picks up anything that changed while it was starting
+            refreshAdvertisement();
+        }
+
+        @Override
+        public void onAdvertisingDataSet(AdvertisingSet set, int status) {
+            if (status == AdvertisingSetCallback.ADVERTISE_SUCCESS) {
+                Metrics.getInstance(BleGattService.this).increment("ble.broadcast_refresh");
+            } else {
+                Log.w(TAG, "Broadcast data refresh failed: " + status);
+                Metrics.getInstance(BleGattService.this).increment("ble.broadcast_refresh_failed");
+            }
+        }
+
         @Override
-        public void onStartSuccess(AdvertiseSettings settingsInEffect) {
+        public void onAdvertisingSetStopped(AdvertisingSet set) {
+            if (broadcastSet == set) {
+                broadcastSet = null;
+            }
+        }
+    };
+
+    private final AdvertisingSetCallback advertisingSetCallback = new AdvertisingSetCallback() {
+        @Override
+        public void onAdvertisingSetStarted(AdvertisingSet set, int txPower, int status) {
+            if (status != AdvertisingSetCallback.ADVERTISE_SUCCESS) {
+                isAdvertising = false;
+                if (extendedAdvertising) {
+                    // Claimed but refused (e.g. no free extended set): legacy instead
+                    Log.w(TAG, "Extended advertising failed: " + status + ", falling back to legacy");
+                    Metrics.getInstance(BleGattService.this).increment("ble.adv_extended_failed");
+                    startAdvertisingSet(false);
+                    return;
+                }
+                Log.e(TAG, "BLE advertising failed: " + status);
+                return;
+            }
             isAdvertising = true;
-            isRunning = true;
+            advertisingSet = set;
             Log.d(TAG, "BLE advertising started");
-            sendBroadcast(ACTION_SERVICE_RUNNING);
+            store.sendEvent(ACTION_SERVICE_RUNNING);
+            refreshAdvertisement();
         }
 
         @Override
-        public void onStartFailure(int errorCode) {
+        public void onAdvertisingDataSet(AdvertisingSet set, int status) {
+            if (status == AdvertisingSetCallback.ADVERTISE_SUCCESS) {
+                Log.d(TAG, "Advertising data refreshed");
+                Metrics.getInstance(BleGattService.this).increment("ble.adv_refresh");
+            } else {
+                Log.w(TAG, "Advertising data refresh failed: " + status);
+                Metrics.getInstance(BleGattService.this).increment("ble.adv_refresh_failed");
+            }
+        }
+
+        @Override
+        public void onAdvertisingSetStopped(AdvertisingSet set) {
             isAdvertising = false;
-            Log.e(TAG, "BLE advertising failed: " + errorCode);
+            advertisingSet = null;
         }
     };
 
@@ -235,10 +720,26 @@ public class BleGattService extends Service {
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 Log.d(TAG, "Device connected: " + deviceName + ", resetting pendingSyncType to AUTO (1)");
                 pendingSyncType = SYNC_TYPE_AUTO; // Reset to auto on new connection
-                sendBroadcast(ACTION_DEVICE_CONNECTED);
+                DisplayCapabilities cached = capabilityCache.get(device.getAddress());
+                links.put(device.getAddress(), new Link(cached != null ? cached : DisplayCapabilities.LEGACY));
+                // Hit rate: ble.caps_cached / (ble.caps_cached + ble.caps_unknown)
+                Metrics.getInstance(BleGattService.this)
+                    .increment(cached != null ? "ble.caps_cached" : "ble.caps_unknown");
+                store.sendEvent(ACTION_DEVICE_CONNECTED);
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 Log.d(TAG, "Device disconnected: " + deviceName);
-                sendBroadcast(ACTION_DEVICE_DISCONNECTED);
+                if (subscribers.remove(device) && subscribers.isEmpty()) {
+                    // Only timed while the link holds; a later wake-up sync isn't a push
+                    pushedPermit = null;
+                }
+                Link link = links.remove(device.getAddress());
+                if (link != null && link.pendingAck != null) {
+                    // Read but never confirmed; the display record stays as it was
+                    Metrics.getInstance(BleGattService.this).increment("ble.ack_missing");
+                }
+                store.sendEvent(ACTION_DEVICE_DISCONNECTED);
+                // Peak after a transfer
+                Metrics.getInstance(BleGattService.this).recordPss("memory.ble_service");
             }
         }
 
@@ -246,65 +747,75 @@ public class BleGattService extends Service {
         public void onCharacteristicReadRequest(BluetoothDevice device, int requestId,
                 int offset, BluetoothGattCharacteristic characteristic) {
 
+            Link link = link(device);
             if (PERMIT_CHAR_UUID.equals(characteristic.getUuid())) {
-                PermitData permit = repository.getPermit();
-                if (permit != null) {
-                    permit.displayFlipped = repository.isDisplayFlipped();
-                }
-                String json = permit != null ? permit.toJson() : "{}";
-                byte[] data = json.getBytes(StandardCharsets.UTF_8);
+                Payload current = payloadFor(link);
+                PermitData permit = current.permit;
+                byte[] data = fullPayload(link, current);
 
-                Log.d(TAG, "Permit read request, sending " + data.length + " bytes");
+                Log.d(TAG, "Permit read request, sending " + data.length + " bytes"
+                    + (current.slots.upcoming != null ? " (with upcoming permit)" : ""));
 
                 // Warn if permit data is incomplete (ESP32 will reject it)
                 if (permit != null && !permit.isComplete()) {
                     Log.w(TAG, "WARNING: Permit data is incomplete - ESP32 may reject");
                 }
 
-                // Show notification and record sync time on first chunk (offset 0)
-                if (offset == 0 && permit != null) {
-                    // Check if permit is different from last synced
-                    String lastSyncedPermit = repository.getDisplayPermitNumber();
-                    // Only consider it "new" if we have a previous record AND it differs
-                    boolean isNewPermit = lastSyncedPermit != null &&
-                        !lastSyncedPermit.equals(permit.permitNumber);
-
-                    byte syncType = pendingSyncType;
-                    boolean isManualSync = syncType == SYNC_TYPE_MANUAL || syncType == SYNC_TYPE_FORCE;
-
-                    // Get previous permit for price comparison before updating
-                    PermitData previousPermit = repository.getDisplayPermit();
-
-                    Log.d(TAG, "Sync decision: lastSynced=" + lastSyncedPermit +
-                        ", current=" + permit.permitNumber +
-                        ", isNewPermit=" + isNewPermit +
-                        ", syncType=" + syncType +
-                        ", isManualSync=" + isManualSync);
-
-                    repository.setDisplayPermit(permit);
-
-                    // Show notification if:
-                    // - Manual sync (button press) - always notify
-                    // - Force sync (long press) - always notify
-                    // - New permit (permit number actually changed) - notify
-                    // AUTO sync with same/unknown permit should be silent
-                    if (isManualSync || isNewPermit) {
-                        showSyncNotification(permit, previousPermit, isNewPermit, syncType);
-                    }
+                // Remember what was served on the first chunk (offset 0); the display
+                // record and notification wait for the display's ack if it sends one
+                if (offset == 0) {
+                    Metrics metrics = Metrics.getInstance(BleGattService.this);
+                    metrics.increment(data == current.binary ? "ble.encoding_binary" : "ble.encoding_json");
+                    // Savings = json_bytes - sent_bytes
+                    metrics.add("ble.permit_sent_bytes", data.length);
+                    metrics.add("ble.permit_json_bytes", current.data.length);
+                    onPayloadServed(link, current);
+                }
 
-                    // Reset sync type after handling
-                    pendingSyncType = SYNC_TYPE_AUTO;
-                    sendBroadcast(ACTION_PERMIT_READ, isNewPermit);
+                sendChunk(device, requestId, offset, data);
+            } else if (DELTA_CHAR_UUID.equals(characteristic.getUuid())) {
+                // Without FEATURE_DELTA the base is never trusted: always the full payload
+                Delta current = deltaPayload(payloadFor(link),
+                    link.capabilities.supports(DisplayCapabilities.FEATURE_DELTA) ? link.deltaBaseHash : NO_BASE);
+                // Unknown base: the full payload, in the cheapest form the display takes
+                byte[] data = current.full ? fullPayload(link, current.target) : current.data;
+                Log.d(TAG, "Delta read request, sending " + data.length + " bytes"
+                    + (current.full ? " (full, unknown base)" : " instead of " + current.target.data.length));
+
+                if (offset == 0) {
+                    Metrics metrics = Metrics.getInstance(BleGattService.this);
+                    metrics.increment(current.full ? "ble.delta_fallback" : "ble.delta_served");
+                    // Savings = full_bytes - sent_bytes
+                    metrics.add("ble.delta_sent_bytes", data.length);
+                    metrics.add("ble.delta_full_bytes", current.target.data.length);
+                    onPayloadServed(link, current.target);
                 }
 
+                sendChunk(device, requestId, offset, data);
+            } else if (SETTINGS_CHAR_UUID.equals(characteristic.getUuid())) {
+                // Fits in one response, and the client state is cached, so nothing to keep
+                int version = store.getDisplaySettingsVersion();
+                byte[] data = DisplaySettings.encode(version, store.isDisplayFlipped(),
+                    store.isPersistentLinkEnabled());
+                Log.d(TAG, "Settings read request, version " + version);
+                if (offset == 0) {
+                    Metrics.getInstance(BleGattService.this).increment("ble.settings_read");
+                }
                 try {
-                    if (offset >= data.length) {
-                        gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, new byte[0]);
-                    } else {
-                        byte[] response = new byte[Math.min(data.length - offset, 512)];
-                        System.arraycopy(data, offset, response, 0, response.length);
-                        gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, response);
-                    }
+                    byte[] response = offset >= data.length ? new byte[0]
+                        : Arrays.copyOfRange(data, offset, data.length);
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, response);
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Security exception sending response", e);
+                }
+            } else if (CHANGE_CHAR_UUID.equals(characteristic.getUuid())
+                    || CAPS_CHAR_UUID.equals(characteristic.getUuid())) {
+                byte[] data = CAPS_CHAR_UUID.equals(characteristic.getUuid())
+                    ? DisplayCapabilities.encodeServer() : currentBeacon();
+                try {
+                    byte[] response = offset >= data.length ? new byte[0]
+                        : Arrays.copyOfRange(data, offset, data.length);
+                    gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, response);
                 } catch (SecurityException e) {
                     Log.e(TAG, "Security exception sending response", e);
                 }
@@ -317,6 +828,54 @@ public class BleGattService extends Service {
             }
         }
 
+        @Override
+        public void onDescriptorReadRequest(BluetoothDevice device, int requestId,
+                int offset, BluetoothGattDescriptor descriptor) {
+            boolean isCccd = CCCD_UUID.equals(descriptor.getUuid());
+            byte[] value = subscribers.contains(device)
+                ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE
+                : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+            try {
+                gattServer.sendResponse(device, requestId,
+                    isCccd ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, 0, isCccd ? value : null);
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security exception sending descriptor response", e);
+            }
+        }
+
+        @Override
+        public void onDescriptorWriteRequest(BluetoothDevice device, int requestId,
+                BluetoothGattDescriptor descriptor, boolean preparedWrite,
+                boolean responseNeeded, int offset, byte[] value) {
+            boolean valid = CCCD_UUID.equals(descriptor.getUuid())
+                && CHANGE_CHAR_UUID.equals(descriptor.getCharacteristic().getUuid())
+                && value != null && value.length == 2;
+            boolean enable = valid && Arrays.equals(value, BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            if (enable && !link(device).capabilities.supports(DisplayCapabilities.FEATURE_CHANGE_NOTIFY)) {
+                // Pushes only go to firmware that announced it handles them first
+                Log.w(TAG, "Change subscription from a display without FEATURE_CHANGE_NOTIFY");
+                valid = false;
+            }
+            if (valid) {
+                if (enable) {
+                    subscribers.add(device);
+                    Metrics.getInstance(BleGattService.this).increment("ble.push_subscribed");
+                    Log.d(TAG, "Display subscribed to changes");
+                } else {
+                    subscribers.remove(device);
+                    Log.d(TAG, "Display unsubscribed from changes");
+                }
+            }
+            if (responseNeeded) {
+                try {
+                    gattServer.sendResponse(device, requestId,
+                        valid ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, 0, null);
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Security exception sending descriptor response", e);
+                }
+            }
+        }
+
         @Override
         public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId,
                 BluetoothGattCharacteristic characteristic, boolean preparedWrite,
@@ -335,6 +894,66 @@ public class BleGattService extends Service {
                         Log.e(TAG, "Security exception sending write response", e);
                     }
                 }
+            } else if (DELTA_CHAR_UUID.equals(characteristic.getUuid())) {
+                boolean valid = value != null && value.length == 4;
+                if (valid) {
+                    Link link = link(device);
+                    link.deltaBaseHash = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xFFFFFFFFL;
+                    Log.d(TAG, "Delta base set to " + Long.toHexString(link.deltaBaseHash));
+                }
+                if (responseNeeded) {
+                    try {
+                        gattServer.sendResponse(device, requestId,
+                            valid ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, 0, null);
+                    } catch (SecurityException e) {
+                        Log.e(TAG, "Security exception sending write response", e);
+                    }
+                }
+            } else if (ACK_CHAR_UUID.equals(characteristic.getUuid())) {
+                DisplayAck ack = DisplayAck.parse(value);
+                if (responseNeeded) {
+                    try {
+                        gattServer.sendResponse(device, requestId,
+                            ack != null ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, 0, null);
+                    } catch (SecurityException e) {
+                        Log.e(TAG, "Security exception sending write response", e);
+                    }
+                }
+                if (ack != null) {
+                    onDisplayAck(link(device), ack);
+                } else {
+                    Log.w(TAG, "Malformed display ack");
+                }
+            } else if (CAPS_CHAR_UUID.equals(characteristic.getUuid())) {
+                DisplayCapabilities announced = DisplayCapabilities.parse(value);
+                if (responseNeeded) {
+                    try {
+                        gattServer.sendResponse(device, requestId,
+                            announced != null ? BluetoothGatt.GATT_SUCCESS : BluetoothGatt.GATT_FAILURE, 0, null);
+                    } catch (SecurityException e) {
+                        Log.e(TAG, "Security exception sending write response", e);
+                    }
+                }
+                if (announced != null) {
+                    // Confirmed: what was assumed from the cache was right. Changed: first
+                    // contact or new firmware, reads before this write got the cached set.
+                    Link link = link(device);
+                    boolean changed = !announced.sameAs(link.capabilities);
+                    Metrics.getInstance(BleGattService.this).increment(
+                        changed ? "ble.caps_changed" : "ble.caps_confirmed");
+                    Log.d(TAG, "Display capabilities: protocol " + announced.protocolVersion
+                        + ", features 0x" + Integer.toHexString(announced.features)
+                        + ", firmware " + announced.firmware);
+                    link.capabilities = announced;
+                    capabilityCache.put(device.getAddress(), announced);
+                    store.displayCapabilities(announced);
+                    if (changed) {
+                        // Whether to broadcast follows the capabilities
+                        refreshAdvertisement();
+                    }
+                } else {
+                    Log.w(TAG, "Malformed display capabilities");
+                }
             } else {
                 if (responseNeeded) {
                     try {
@@ -347,6 +966,123 @@ public class BleGattService extends Service {
         }
     };
 
+    // State for a connected display. A request can race the connection callback, so a
+    // device with no link yet gets one from the cache the same way.
+    private Link link(BluetoothDevice device) {
+        return links.computeIfAbsent(device.getAddress(), address -> {
+            DisplayCapabilities cached = capabilityCache.get(address);
+            return new Link(cached != null ? cached : DisplayCapabilities.LEGACY);
+        });
+    }
+
+    // First chunk of a permit or delta transfer
+    private void onPayloadServed(Link link, Payload served) {
+        PermitData permit = served.permit;
+        if (permit == null) return;
+
+        // Check if permit is different from last synced
+        String lastSyncedPermit = store.getDisplayPermitNumber();
+        // Only consider it "new" if we have a previous record AND it differs
+        boolean isNewPermit = lastSyncedPermit != null &&
+            !lastSyncedPermit.equals(permit.permitNumber);
+
+        byte syncType = pendingSyncType;
+
+        Log.d(TAG, "Permit read: lastSynced=" + lastSyncedPermit +
+            ", current=" + permit.permitNumber +
+            ", isNewPermit=" + isNewPermit +
+            ", syncType=" + syncType);
+
+        PendingAck pending = new PendingAck(served, isNewPermit, syncType, SystemClock.elapsedRealtime());
+
+        // Reset sync type after handling
+        pendingSyncType = SYNC_TYPE_AUTO;
+        store.sendEvent(ACTION_PERMIT_READ, isNewPermit);
+
+        if (link.capabilities.supports(DisplayCapabilities.FEATURE_ACK)) {
+            link.pendingAck = pending;
+        } else {
+            // Firmware without the ack characteristic never confirms: the read is all
+            // there is, so it's recorded now as it always was
+            link.pendingAck = null;
+            Metrics.getInstance(this).increment("ble.ack_unsupported");
+            onDisplayed(pending, null);
+        }
+    }
+
+    private void sendChunk(BluetoothDevice device, int requestId, int offset, byte[] data) {
+        try {
+            if (offset >= data.length) {
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, new byte[0]);
+            } else {
+                byte[] response = new byte[Math.min(data.length - offset, 512)];
+                System.arraycopy(data, offset, response, 0, response.length);
+                gattServer.sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, response);
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception sending response", e);
+        }
+    }
+
+    private void onDisplayAck(Link link, DisplayAck ack) {
+        Metrics metrics = Metrics.getInstance(this);
+        PendingAck pending = link.pendingAck;
+        if (pending == null || pending.payload.hash != ack.payloadHash) {
+            // Rendered something other than what was served last (stale read, or an ack
+            // for a read that already settled): the display record is left alone
+            Log.w(TAG, "Display ack for unexpected payload " + Integer.toHexString(ack.payloadHash));
+            metrics.increment("ble.ack_mismatch");
+            return;
+        }
+        link.pendingAck = null;
+
+        long latency = SystemClock.elapsedRealtime() - pending.readAt;
+        Log.d(TAG, "Display ack: rendered in " + ack.renderMillis + " ms, " + latency
+            + " ms after read, battery " + ack.batteryPercent + "%, firmware " + ack.firmware);
+        metrics.increment("ble.ack_matched");
+        metrics.recordDuration("ble.ack_latency", latency);
+        metrics.recordDuration("display.render", ack.renderMillis);
+        onDisplayed(pending, ack);
+    }
+
+    // The display shows what was served: record it and notify. ack is null for
+    // firmware that doesn't send one.
+    private void onDisplayed(PendingAck pending, DisplayAck ack) {
+        Metrics metrics = Metrics.getInstance(this);
+        ackedPayload = pending.payload;
+
+        PermitData permit = pending.payload.permit;
+        PushedPermit pushed = pushedPermit;
+        if (pushed != null && permit != null && pushed.permitNumber.equals(permit.permitNumber)) {
+            pushedPermit = null;
+            metrics.recordDuration("ble.push_to_display", SystemClock.elapsedRealtime() - pushed.pushedAt);
+            if (pushed.fetchedAt > 0) {
+                // The number that matters in this mode: GitHub fetch to permit on screen
+                metrics.recordDuration("ble.fetch_to_display", System.currentTimeMillis() - pushed.fetchedAt);
+            }
+        }
+        store.displayAcked(permit, pending.isNewPermit, ack);
+
+        // Show notification if:
+        // - Manual sync (button press) - always notify
+        // - Force sync (long press) - always notify
+        // - New permit (permit number actually changed) - notify
+        // AUTO sync with same/unknown permit should be silent
+        boolean isManualSync = pending.syncType == SYNC_TYPE_MANUAL || pending.syncType == SYNC_TYPE_FORCE;
+        if (isManualSync || pending.isNewPermit) {
+            // Permit before this one in the history log, for price comparison
+            ParsedPermit previousPermit = store.getPermitBefore(permit);
+            showSyncNotification(pending.payload.slots.newest(), previousPermit, pending.isNewPermit, pending.syncType);
+        }
+    }
+
+    // Cheapest form of the full payload this display takes. Its ack carries the
+    // JSON payload's hash either way; the binary form includes it, and the flip.
+    private byte[] fullPayload(Link link, Payload current) {
+        return current.binary != null && link.capabilities.supports(DisplayCapabilities.FEATURE_BINARY)
+            ? current.binary : current.data;
+    }
+
     private boolean hasBluetoothPermissions() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             return ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_ADVERTISE)
@@ -357,18 +1093,8 @@ public class BleGattService extends Service {
         return true;
     }
 
-    private void sendBroadcast(String action) {
-        Intent intent = new Intent(action);
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-    }
-
-    private void sendBroadcast(String action, boolean isNewPermit) {
-        Intent intent = new Intent(action);
-        intent.putExtra("isNewPermit", isNewPermit);
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-    }
-
-    private void showSyncNotification(PermitData permit, PermitData previousPermit, boolean isNewPermit, byte syncType) {
+    private void showSyncNotification(ParsedPermit parsed, ParsedPermit previousPermit, boolean isNewPermit, byte syncType) {
+        PermitData permit = parsed.permit;
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(
             this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
@@ -395,43 +1121,14 @@ public class BleGattService extends Service {
         details.append("\nPermit ").append(permit.permitNumber).append(" • ").append(permit.plateNumber);
         if (permit.validFrom != null && !permit.validFrom.isEmpty() &&
             permit.validTo != null && !permit.validTo.isEmpty()) {
-            String from = permit.validFrom;
-            String to = permit.validTo;
-            // Strip redundant year/month from first date
-            // Format: "Jan 7, 2026: 16:00" or "Jan 7, 2026"
-            String fromBase = from.contains(":") ? from.split(":")[0].trim() : from;
-            String toBase = to.contains(":") ? to.split(":")[0].trim() : to;
-            // Check same year
-            if (fromBase.length() > 6 && toBase.length() > 6) {
-                String fromYear = fromBase.substring(fromBase.length() - 4);
-                String toYear = toBase.substring(toBase.length() - 4);
-                if (fromYear.equals(toYear) && fromYear.matches("\\d{4}")) {
-                    fromBase = fromBase.substring(0, fromBase.length() - 6); // Remove ", 2026"
-                    // Check same month (first 3 chars) -> "Jan 7 - 14, 2026"
-                    if (fromBase.length() >= 3 && toBase.length() >= 3 &&
-                        fromBase.substring(0, 3).equals(toBase.substring(0, 3))) {
-                        // Extract just the day from toBase (e.g., "Jan 14, 2026" -> "14, 2026")
-                        toBase = toBase.substring(4);
-                    }
-                }
-            }
-            details.append("\n").append(fromBase).append(" - ").append(toBase);
+            details.append("\n").append(PermitFormatter.formatRange(parsed));
         }
         if (permit.price != null && !permit.price.isEmpty()) {
             details.append("\nPaid: ").append(permit.price);
             // Show price change if we have a previous permit with price
-            if (isNewPermit && previousPermit != null && previousPermit.price != null && !previousPermit.price.isEmpty()) {
-                try {
-                    double currentPrice = parsePrice(permit.price);
-                    double prevPrice = parsePrice(previousPermit.price);
-                    double diff = currentPrice - prevPrice;
-                    if (Math.abs(diff) >= 0.01) {
-                        String sign = diff > 0 ? "+" : "";
-                        details.append(String.format(" (%s$%.2f)", sign, diff));
-                    }
-                } catch (NumberFormatException e) {
-                    // Ignore if price parsing fails
-                }
+            long diff = parsed.priceChangeCents(previousPermit);
+            if (isNewPermit && diff != ParsedPermit.UNKNOWN && diff != 0) {
+                details.append(" (").append(ParsedPermit.formatCentsChange(diff)).append(")");
             }
         }
 
@@ -451,12 +1148,6 @@ public class BleGattService extends Service {
         manager.notify(SYNC_NOTIFICATION_ID, notification);
     }
 
-    private double parsePrice(String price) throws NumberFormatException {
-        // Remove $ and any other non-numeric chars except decimal point
-        String cleaned = price.replaceAll("[^0-9.]", "");
-        return Double.parseDouble(cleaned);
-    }
-
     private void createNotificationChannel() {
         NotificationManager manager = getSystemService(NotificationManager.class);
 
@@ -480,14 +1171,23 @@ public class BleGattService extends Service {
     @Override
     public void onDestroy() {
         Log.d(TAG, "Service destroyed");
-        isRunning = false;
+        MemoryRegistry.getInstance().unregister(payloadMemory);
+        payload = null;
+        legacyPayload = null;
+        delta = null;
+        ackedPayload = null;
+        links.clear();
+        beaconExecutor.shutdownNow();
+        store.sendEvent(ACTION_SERVICE_STOPPED);
+        store.stop();
 
         if (advertiser != null && isAdvertising) {
             try {
-                advertiser.stopAdvertising(advertiseCallback);
+                advertiser.stopAdvertisingSet(advertisingSetCallback);
             } catch (SecurityException e) {
                 Log.e(TAG, "Security exception stopping advertising", e);
             }
+            stopBroadcast();
         }
 
         if (gattServer != null) {
@@ -501,6 +1201,86 @@ public class BleGattService extends Service {
         super.onDestroy();
     }
 
+    // What this display is served. A display without FEATURE_SLOTS only ever gets the
+    // newest permit, as before slots: it would show the current one and never switch,
+    // while the newest was recorded as on the display. Its hash differs from the
+    // beacon's only while an upcoming permit is waiting.
+    private Payload payloadFor(Link link) {
+        return link.capabilities.supports(DisplayCapabilities.FEATURE_SLOTS)
+            ? permitPayload() : legacyPermitPayload();
+    }
+
+    // Store permits are replaced rather than mutated, so identity means same content;
+    // past the upcoming permit's start the slots are chosen again. Doesn't depend on
+    // any display's capabilities: the beacon hash is this payload's.
+    private Payload permitPayload() {
+        ParsedPermit fetched = store.getParsedPermit();
+        ParsedPermit previous = store.getParsedPreviousPermit();
+        boolean flipped = store.isDisplayFlipped();
+        long now = System.currentTimeMillis();
+        Payload cached = payload;
+        if (cached != null && cached.fetched == fetched && cached.previous == previous
+            && cached.flipped == flipped && now < cached.slots.switchAt) {
+            return cached;
+        }
+
+        cached = new Payload(fetched, previous, PermitSlots.select(fetched, previous, now), flipped);
+        payload = cached;
+        if (cached.slots.upcoming != null) {
+            Metrics.getInstance(this).increment("ble.payload_upcoming");
+        }
+        return cached;
+    }
+
+    // The newest permit alone, for displays without FEATURE_SLOTS
+    private Payload legacyPermitPayload() {
+        ParsedPermit fetched = store.getParsedPermit();
+        boolean flipped = store.isDisplayFlipped();
+        Payload cached = legacyPayload;
+        if (cached != null && cached.fetched == fetched && cached.flipped == flipped) {
+            return cached;
+        }
+
+        cached = new Payload(fetched, null, PermitSlots.select(fetched, null, 0), flipped);
+        legacyPayload = cached;
+        return cached;
+    }
+
+    // Delta from what the display says it has to its current payload
+    private Delta deltaPayload(Payload target, long baseHash) {
+        Delta cached = delta;
+        if (cached != null && cached.target == target && cached.baseHash == baseHash) {
+            return cached;
+        }
+
+        byte[] base = baseHash != NO_BASE ? findBase((int) baseHash) : null;
+        byte[] data = base != null ? PermitDelta.encode(base, (int) baseHash, target.data, target.hash) : null;
+        cached = data != null
+            ? new Delta(target, baseHash, data, false)
+            : new Delta(target, baseHash, target.data, true);
+        delta = cached;
+        return cached;
+    }
+
+    // Payload bytes with this hash: the last acked one, a current one, or the display
+    // permit on record re-encoded as a single slot (after this process restarted)
+    private byte[] findBase(int hash) {
+        Payload acked = ackedPayload;
+        if (acked != null && acked.hash == hash) return acked.data;
+        Payload current = payload;
+        if (current != null && current.hash == hash) return current.data;
+        Payload legacy = legacyPayload;
+        if (legacy != null && legacy.hash == hash) return legacy.data;
+
+        ParsedPermit display = store.getParsedDisplayPermit();
+        if (display != null) {
+            byte[] data = PermitSlots.select(display, null, System.currentTimeMillis())
+                .encode(store.isDisplayFlipped());
+            if (DisplayAck.hash(data) == hash) return data;
+        }
+        return null;
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
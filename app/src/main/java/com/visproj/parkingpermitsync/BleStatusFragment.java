@@ -1,17 +1,11 @@
 package com.visproj.parkingpermitsync;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
-import android.text.SpannableString;
-import android.text.Spanned;
-import android.text.style.ForegroundColorSpan;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,15 +18,14 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.widget.PopupMenu;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BleStatusFragment extends Fragment {
+    private static final String TAG = "BleStatusFragment";
 
     private static final int COLOR_BLUE = 0xFF2196F3;
     private static final int COLOR_WHITE = 0xFFFFFFFF;
@@ -60,63 +53,90 @@ public class BleStatusFragment extends Fragment {
     private Button btnUpdateDisplay;
 
     private PermitRepository repository;
+    private PermitLifecycle lifecycle;
     private DisplaySyncHelper displaySyncHelper;
     private Handler handler;
-    private Runnable updateRunnable;
+    private RelativeTimeTicker relativeTimeTicker;
+
+    // View state is computed on stateExecutor; appliedState is what the views show now
+    private final ExecutorService stateExecutor = Executors.newSingleThreadExecutor();
+    private StatusViewState appliedState;
+    private int stateGeneration = 0;
     private boolean pendingBleRunning = false;
 
-    private final BroadcastReceiver bleReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-            if (action == null) return;
-
-            switch (action) {
-                case BleGattService.ACTION_SERVICE_RUNNING:
-                    setBleRunning();
-                    break;
-                case BleGattService.ACTION_DEVICE_CONNECTED:
-                    showConnectionStatus("Display connected", "#ff9800");
-                    // Also update warning banner button
-                    setButtonEnabled(btnUpdateDisplay, false, COLOR_WHITE);
-                    btnUpdateDisplay.setText("Connecting...");
-                    break;
-                case BleGattService.ACTION_DEVICE_DISCONNECTED:
-                    hideConnectionStatus();
-                    setButtonEnabled(btnUpdateDisplay, true, COLOR_WHITE);
-                    btnUpdateDisplay.setText("Update");
-                    updateUI();
-                    break;
-                case BleGattService.ACTION_PERMIT_READ:
-                    showConnectionStatus("Display updating...", "#4caf50");
-                    btnUpdateDisplay.setText("Updating...");
-                    boolean isNewPermit = intent.getBooleanExtra("isNewPermit", false);
-                    handler.postDelayed(() -> {
-                        hideConnectionStatus();
-                        setButtonEnabled(btnUpdateDisplay, true, COLOR_WHITE);
-                        btnUpdateDisplay.setText("Update");
-                        // Save the permit as display permit
-                        PermitData permit = repository.getPermit();
-                        if (permit != null && permit.permitNumber != null) {
-                            repository.setDisplayPermit(permit);
-                        }
-                        updateUI();
-                        PermitData p = repository.getPermit();
-                        String msg;
-                        if (p != null && p.permitNumber != null) {
-                            msg = isNewPermit
-                                ? "New permit synced: " + p.permitNumber
-                                : "Synced to display: " + p.permitNumber;
-                        } else {
-                            msg = "Display updated!";
-                        }
-                        Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show();
-                    }, 4000);
-                    break;
+    // Set when the display has read the permit and cleared by its ack
+    private boolean permitReadPending = false;
+
+    private final PermitRepository.ChangeListener repositoryListener = change -> {
+        // Permit changes arrive through the lifecycle listener below
+        if (change == PermitRepository.Change.LAST_SYNC) {
+            refreshState();
+        }
+    };
+
+    // Called on permit changes and at each badge/estimate/days-behind transition
+    private final PermitLifecycle.Listener lifecycleListener = snapshot -> refreshState();
+
+    // BLE state as last applied to the views; null until the first delivery
+    private BleEvents.State shownBleState;
+
+    private final EventBus.Subscriber<BleEvents.State> bleStateSubscriber = state -> {
+        if (getView() == null) return;
+        BleEvents.State previous = shownBleState;
+        shownBleState = state;
+
+        if (state.serviceRunning && (previous == null || !previous.serviceRunning)) {
+            setBleRunning();
+        }
+        boolean wasConnected = previous != null && previous.displayConnected;
+        if (state.displayConnected && !wasConnected) {
+            showConnectionStatus("Display connected", "#ff9800");
+            // Also update warning banner button
+            setButtonEnabled(btnUpdateDisplay, false, COLOR_WHITE);
+            btnUpdateDisplay.setText("Connecting...");
+        } else if (!state.displayConnected && wasConnected) {
+            hideConnectionStatus();
+            setButtonEnabled(btnUpdateDisplay, true, COLOR_WHITE);
+            btnUpdateDisplay.setText("Update");
+            if (permitReadPending) {
+                // Read the permit but never confirmed showing it
+                permitReadPending = false;
+                Toast.makeText(requireContext(), "Display did not confirm the update", Toast.LENGTH_SHORT).show();
             }
         }
     };
 
+    private final EventBus.Subscriber<BleEvents.PermitRead> permitReadSubscriber = read -> {
+        if (getView() == null) return;
+        // Nothing is recorded yet: the display still has to render and ack it
+        if (!BleEvents.STATE.get().displayConnected) return;
+        showConnectionStatus("Display updating...", "#4caf50");
+        btnUpdateDisplay.setText("Updating...");
+        permitReadPending = true;
+    };
+
+    // The display permit is already recorded; the repository listener refreshes the
+    // cards, so only the transient status and the toast are shown here
+    private final EventBus.Subscriber<BleEvents.DisplayAcked> displayAckedSubscriber = ack -> {
+        if (getView() == null) return;
+        permitReadPending = false;
+        if (BleEvents.STATE.get().displayConnected) {
+            showConnectionStatus("Display updated", "#4caf50");
+        }
+        String msg;
+        if (ack.permitNumber != null) {
+            msg = ack.isNewPermit
+                ? "New permit synced: " + ack.permitNumber
+                : "Synced to display: " + ack.permitNumber;
+        } else {
+            msg = "Display updated!";
+        }
+        if (ack.batteryPercent != DisplayAck.BATTERY_UNKNOWN) {
+            msg += " (battery " + ack.batteryPercent + "%)";
+        }
+        Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show();
+    };
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -127,7 +147,8 @@ public class BleStatusFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        repository = new PermitRepository(requireContext());
+        repository = PermitRepository.getInstance(requireContext());
+        lifecycle = PermitLifecycle.getInstance(requireContext());
         handler = new Handler(Looper.getMainLooper());
 
         tvStatus = view.findViewById(R.id.tvStatus);
@@ -158,15 +179,12 @@ public class BleStatusFragment extends Fragment {
         btnBattery.setOnClickListener(v -> openBatterySettings());
         btnUpdateDisplay.setOnClickListener(v -> updateDisplay(false));
 
-        updateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                updateSyncTimes();
-                handler.postDelayed(this, 10000);
-            }
-        };
+        // Only the relative "x min ago" labels need a timer; state changes arrive as events
+        relativeTimeTicker = new RelativeTimeTicker();
 
-        updateUI();
+        appliedState = null;  // fresh views
+        shownBleState = null;
+        refreshState();
 
         // Apply pending BLE status if it was set before view was created
         if (pendingBleRunning) {
@@ -178,26 +196,31 @@ public class BleStatusFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(BleGattService.ACTION_SERVICE_RUNNING);
-        filter.addAction(BleGattService.ACTION_DEVICE_CONNECTED);
-        filter.addAction(BleGattService.ACTION_DEVICE_DISCONNECTED);
-        filter.addAction(BleGattService.ACTION_PERMIT_READ);
-        LocalBroadcastManager.getInstance(requireContext()).registerReceiver(bleReceiver, filter);
-
-        handler.post(updateRunnable);
-        updateUI();
-
-        if (BleGattService.isServiceRunning()) {
-            setBleRunning();
-        }
+        // The state bus is sticky, so this also applies whatever changed while paused
+        BleEvents.STATE.subscribe(bleStateSubscriber, ContextCompat.getMainExecutor(requireContext()));
+        BleEvents.PERMIT_READ.subscribe(permitReadSubscriber, ContextCompat.getMainExecutor(requireContext()));
+        BleEvents.DISPLAY_ACKED.subscribe(displayAckedSubscriber, ContextCompat.getMainExecutor(requireContext()));
+        repository.addListener(repositoryListener, ContextCompat.getMainExecutor(requireContext()));
+        // Delivers the current snapshot right away, catching up on anything missed while paused
+        lifecycle.addListener(lifecycleListener, ContextCompat.getMainExecutor(requireContext()));
+        relativeTimeTicker.start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        LocalBroadcastManager.getInstance(requireContext()).unregisterReceiver(bleReceiver);
-        handler.removeCallbacks(updateRunnable);
+        BleEvents.STATE.unsubscribe(bleStateSubscriber);
+        BleEvents.PERMIT_READ.unsubscribe(permitReadSubscriber);
+        BleEvents.DISPLAY_ACKED.unsubscribe(displayAckedSubscriber);
+        repository.removeListener(repositoryListener);
+        lifecycle.removeListener(lifecycleListener);
+        relativeTimeTicker.stop();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        stateExecutor.shutdown();
     }
 
     private void showConnectionStatus(String message, String color) {
@@ -223,7 +246,6 @@ public class BleStatusFragment extends Fragment {
                 setButtonEnabled(btnSync, true, COLOR_BLUE);
                 tvStatus.setText("BLE Server Running");
                 setStatusIndicatorColor("#4caf50");
-                updateUI();
 
                 String msg = isNew ? "New permit synced!" : "Permit up to date";
                 Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show();
@@ -284,17 +306,8 @@ public class BleStatusFragment extends Fragment {
                 setButtonEnabled(btnUpdateDisplay, true, COLOR_WHITE);
                 btnUpdateDisplay.setText("Update");
                 tvSyncStatus.setVisibility(View.GONE);
-
-                // Track which permit is now on the display (save full permit data)
-                PermitData permit = repository.getPermit();
-                if (permit != null && permit.permitNumber != null) {
-                    repository.setDisplayPermit(permit);
-                }
-                updateUI();
-                String msg = permit != null && permit.permitNumber != null
-                    ? "New permit synced to display: " + permit.permitNumber
-                    : "Display updated!";
-                Toast.makeText(requireContext(), msg, Toast.LENGTH_SHORT).show();
+                // The display now reads the permit from BleGattService; it is recorded
+                // (and toasted) when the display acks it
             }
 
             @Override
@@ -348,19 +361,22 @@ public class BleStatusFragment extends Fragment {
 
     private DisplaySyncCallback pendingSyncCallback;
 
-    public void triggerDisplaySync(DisplaySyncCallback callback) {
+    // Display settings changed. Firmware that reads the settings characteristic only
+    // re-reads that; anything else gets a plain sync and takes the flip from the permit.
+    public void triggerSettingsSync(DisplaySyncCallback callback) {
         pendingSyncCallback = callback;
-        updateDisplayWithCallback(false);
+        sendSettingsWithCallback(repository.getDisplayCapabilities()
+            .supports(DisplayCapabilities.FEATURE_SETTINGS));
     }
 
-    private void updateDisplayWithCallback(boolean force) {
+    private void sendSettingsWithCallback(boolean settingsOnly) {
         setButtonEnabled(btnSync, false, COLOR_BLUE);
         setButtonEnabled(btnUpdateDisplay, false, COLOR_WHITE);
         btnUpdateDisplay.setText("Updating...");
         tvSyncStatus.setVisibility(View.VISIBLE);
-        tvSyncStatus.setText(force ? "Force updating display..." : "Scanning for display...");
+        tvSyncStatus.setText("Scanning for display...");
 
-        displaySyncHelper.syncDisplay(force, new DisplaySyncHelper.SyncCallback() {
+        DisplaySyncHelper.SyncCallback syncCallback = new DisplaySyncHelper.SyncCallback() {
             @Override
             public void onStatus(String status) {
                 if (!isAdded()) return;
@@ -375,12 +391,6 @@ public class BleStatusFragment extends Fragment {
                 btnUpdateDisplay.setText("Update");
                 tvSyncStatus.setVisibility(View.GONE);
 
-                PermitData permit = repository.getPermit();
-                if (permit != null && permit.permitNumber != null) {
-                    repository.setDisplayPermit(permit);
-                }
-                updateUI();
-
                 if (pendingSyncCallback != null) {
                     pendingSyncCallback.onSuccess();
                     pendingSyncCallback = null;
@@ -408,288 +418,105 @@ public class BleStatusFragment extends Fragment {
                     pendingSyncCallback = null;
                 }
             }
-        });
-    }
-
-    private void updateUI() {
-        if (!isAdded() || repository == null) return;
-
-        PermitData githubPermit = repository.getPermit();
-        PermitData displayPermit = repository.getDisplayPermit();
-        boolean isOutOfSync = repository.isDisplayOutOfSync();
-
-        // If display is out of sync and we have a display permit, show the OLD one as current
-        // (because that's what's actually on the display right now)
-        // Otherwise show the github permit
-        PermitData currentPermit;
-        if (isOutOfSync && displayPermit != null && displayPermit.isValid()) {
-            currentPermit = displayPermit;
-        } else {
-            currentPermit = githubPermit;
-        }
-
-        if (currentPermit != null && currentPermit.isValid()) {
-            tvPermitNumber.setText(currentPermit.permitNumber);
-            if (currentPermit.price != null && !currentPermit.price.isEmpty()) {
-                String priceText = currentPermit.price;
-                // Show price change compared to previous permit (week-over-week)
-                PermitData previousPermit = repository.getPreviousPermit();
-                String change = null;
-                int changeColor = 0;
-                if (previousPermit != null && previousPermit.price != null && !previousPermit.price.isEmpty()) {
-                    double[] result = getPriceChangeValue(currentPermit.price, previousPermit.price);
-                    if (result != null) {
-                        double diff = result[0];
-                        String sign = diff > 0 ? "+" : "";
-                        change = String.format("(%s$%.2f)", sign, diff);
-                        // Red for increase (paying more), green for decrease (saving money)
-                        changeColor = diff > 0 ? Color.parseColor("#f44336") : Color.parseColor("#4caf50");
-                    }
-                }
-                if (change != null) {
-                    // Format: "+$2.40 $50.78" with change colored
-                    String fullText = change + " " + priceText;
-                    SpannableString spannable = new SpannableString(fullText);
-                    spannable.setSpan(new ForegroundColorSpan(changeColor), 0, change.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-                    tvPermitPrice.setText(spannable);
-                } else {
-                    tvPermitPrice.setText(priceText);
-                }
-                tvPermitPrice.setVisibility(View.VISIBLE);
-            } else {
-                tvPermitPrice.setVisibility(View.GONE);
-            }
-            tvPermitVehicle.setText(vehicleLabel(currentPermit));
-
-            // Format dates nicely
-            String dateRange = formatDateRange(currentPermit.validFrom, currentPermit.validTo);
-            tvPermitDates.setText(dateRange);
-
-            // Set badge based on current status
-            updatePermitBadge(currentPermit);
-
-            // Show scheduled permit if GitHub has a newer one
-            updateScheduledPermit(currentPermit, githubPermit, displayPermit != null);
+        };
+        if (settingsOnly) {
+            displaySyncHelper.sendSettings(syncCallback);
         } else {
-            tvPermitNumber.setText("No permit");
-            tvPermitPrice.setText("");
-            tvPermitDates.setText("--");
-            tvPermitVehicle.setText("--");
-            tvPermitBadge.setText("None");
-            tvPermitBadge.setBackgroundResource(R.drawable.badge_orange);
-            scheduledPermitCard.setVisibility(View.GONE);
+            displaySyncHelper.syncDisplay(false, syncCallback);
         }
-
-        updateSyncTimes();
-        updateBatteryButton();
     }
 
-    // Build the "Name (PLATE)" label from the permit's own vehicleName (falls back if missing).
-    private String vehicleLabel(PermitData p) {
-        String name = (p.vehicleName != null && !p.vehicleName.isEmpty()) ? p.vehicleName : "Vehicle";
-        return String.format("%s (%s)", name, p.plateNumber);
+    // Recompute the view state off the main thread, then apply only what changed
+    private void refreshState() {
+        if (!isAdded() || repository == null) return;
+        Context context = requireContext().getApplicationContext();
+        int generation = ++stateGeneration;
+        stateExecutor.execute(() -> {
+            StatusViewState state = StatusViewState.load(context, repository, lifecycle);
+            handler.post(() -> {
+                // A newer refresh was requested (or the view went away) meanwhile
+                if (generation != stateGeneration || !isAdded() || getView() == null) return;
+                applyState(state);
+            });
+        });
     }
 
-    private void updateScheduledPermit(PermitData currentPermit, PermitData githubPermit, boolean hasDisplayPermit) {
-        // Show scheduled card if GitHub has a different (newer) permit than what's on display
-        if (githubPermit != null && githubPermit.isValid() &&
-            !githubPermit.permitNumber.equals(currentPermit.permitNumber)) {
+    private void applyState(StatusViewState state) {
+        StatusViewState previous = appliedState;
 
-            // GitHub has a newer permit - show it as scheduled
-            tvScheduledNumber.setText(githubPermit.permitNumber);
-            String dateRange = formatDateRange(githubPermit.validFrom, githubPermit.validTo);
-            tvScheduledDates.setText(dateRange);
-            tvScheduledVehicle.setText(vehicleLabel(githubPermit));
+        if (!state.samePermit(previous)) {
+            tvPermitNumber.setText(state.permitNumber);
+            tvPermitVehicle.setText(state.vehicle);
+            tvPermitDates.setText(state.dates);
+        }
 
-            if (githubPermit.price != null && !githubPermit.price.isEmpty()) {
-                tvScheduledPrice.setText(githubPermit.price);
-                tvScheduledPrice.setVisibility(View.VISIBLE);
+        if (!state.samePrice(previous)) {
+            if (state.price == null) {
+                tvPermitPrice.setVisibility(View.GONE);
+            } else if (state.priceChange != null) {
+                tvPermitPrice.setText(PriceText.withChange(state.price, state.priceChange, state.priceIncreased));
+                tvPermitPrice.setVisibility(View.VISIBLE);
             } else {
-                tvScheduledPrice.setVisibility(View.GONE);
+                tvPermitPrice.setText(state.price);
+                tvPermitPrice.setVisibility(View.VISIBLE);
             }
-
-            scheduledPermitCard.setVisibility(View.VISIBLE);
-            return;
         }
 
-        // If no display permit yet, don't show estimated future permit
-        // (we're already showing the GitHub permit as current)
-        if (!hasDisplayPermit) {
-            scheduledPermitCard.setVisibility(View.GONE);
-            return;
+        if (!state.sameBadge(previous)) {
+            tvPermitBadge.setText(state.badgeLabel);
+            tvPermitBadge.setBackgroundResource(state.badgeBackground);
         }
 
-        // No newer permit from GitHub - check if current is expiring soon and estimate next
-        try {
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MMM dd, yyyy: HH:mm", Locale.US);
-            SimpleDateFormat outputFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
-            SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
-
-            Date toDate = inputFormat.parse(currentPermit.validTo);
-            Date now = new Date();
-
-            if (toDate == null) {
-                scheduledPermitCard.setVisibility(View.GONE);
-                return;
-            }
-
-            // Calculate days until expiry
-            boolean isToday = dayFormat.format(toDate).equals(dayFormat.format(now));
-            long daysRemaining = (toDate.getTime() - now.getTime()) / (1000 * 60 * 60 * 24);
-
-            // Show estimated permit if expiring today or within 2 days
-            if (isToday || daysRemaining <= 2) {
-                // Calculate next permit dates
-                java.util.Calendar cal = java.util.Calendar.getInstance();
-                cal.setTime(toDate);
-                cal.add(java.util.Calendar.DAY_OF_MONTH, 1);
-                Date nextStart = cal.getTime();
-                cal.add(java.util.Calendar.DAY_OF_MONTH, 6);
-                Date nextEnd = cal.getTime();
-
-                tvScheduledNumber.setText("Pending");
-                String dateRange = outputFormat.format(nextStart) + " - " + outputFormat.format(nextEnd);
-                tvScheduledDates.setText(dateRange);
-                tvScheduledVehicle.setText(vehicleLabel(currentPermit));
-
-                // Estimate price based on current
-                if (currentPermit.price != null && !currentPermit.price.isEmpty()) {
-                    tvScheduledPrice.setText("~" + currentPermit.price);
+        if (!state.sameScheduled(previous)) {
+            if (state.scheduledNumber != null) {
+                tvScheduledNumber.setText(state.scheduledNumber);
+                tvScheduledDates.setText(state.scheduledDates);
+                tvScheduledVehicle.setText(state.scheduledVehicle);
+                if (state.scheduledPrice != null) {
+                    tvScheduledPrice.setText(state.scheduledPrice);
                     tvScheduledPrice.setVisibility(View.VISIBLE);
                 } else {
                     tvScheduledPrice.setVisibility(View.GONE);
                 }
-
                 scheduledPermitCard.setVisibility(View.VISIBLE);
             } else {
                 scheduledPermitCard.setVisibility(View.GONE);
             }
-        } catch (ParseException e) {
-            scheduledPermitCard.setVisibility(View.GONE);
         }
-    }
 
-    private String formatDateRange(String from, String to) {
-        try {
-            // Input format: "Dec 30, 2025: 00:00" or similar
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MMM dd, yyyy: HH:mm", Locale.US);
-            SimpleDateFormat monthYearFormat = new SimpleDateFormat("MMyyyy", Locale.US);
-            SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy", Locale.US);
-            SimpleDateFormat dayFormat = new SimpleDateFormat("d", Locale.US);
-            SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMM d", Locale.US);
-
-            Date fromDate = inputFormat.parse(from);
-            Date toDate = inputFormat.parse(to);
-
-            if (fromDate != null && toDate != null) {
-                boolean sameYear = yearFormat.format(fromDate).equals(yearFormat.format(toDate));
-                boolean sameMonthYear = monthYearFormat.format(fromDate).equals(monthYearFormat.format(toDate));
-
-                if (sameMonthYear) {
-                    // Same month/year: "Jan 7 - 14, 2026"
-                    return monthDayFormat.format(fromDate) + " - " + dayFormat.format(toDate) + ", " +
-                           yearFormat.format(toDate);
-                } else if (sameYear) {
-                    // Different month, same year: "Dec 30 - Jan 6, 2026"
-                    return monthDayFormat.format(fromDate) + " - " + monthDayFormat.format(toDate) + ", " +
-                           yearFormat.format(toDate);
-                } else {
-                    // Different year: "Dec 30, 2025 - Jan 6, 2026"
-                    return monthDayFormat.format(fromDate) + ", " + yearFormat.format(fromDate) + " - " +
-                           monthDayFormat.format(toDate) + ", " + yearFormat.format(toDate);
-                }
-            }
-        } catch (ParseException e) {
-            // Try alternate format without time
-            try {
-                SimpleDateFormat altInput = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
-                Date fromDate = altInput.parse(from.split(":")[0].trim());
-                Date toDate = altInput.parse(to.split(":")[0].trim());
-                if (fromDate != null && toDate != null) {
-                    return altInput.format(fromDate) + " - " + altInput.format(toDate);
-                }
-            } catch (Exception ex) {
-                // Fall through to default
-            }
+        if (!state.sameSyncTimes(previous)) {
+            applySyncTimes(state);
         }
-        // Fallback: just return as-is but cleaned up
-        String cleanFrom = from.contains(":") ? from.substring(0, from.lastIndexOf(":")).trim() : from;
-        String cleanTo = to.contains(":") ? to.substring(0, to.lastIndexOf(":")).trim() : to;
-        return cleanFrom + " - " + cleanTo;
-    }
 
-    private void updatePermitBadge(PermitData permit) {
-        try {
-            SimpleDateFormat inputFormat = new SimpleDateFormat("MMM dd, yyyy: HH:mm", Locale.US);
-            SimpleDateFormat dayFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
-            Date toDate = inputFormat.parse(permit.validTo);
-            Date now = new Date();
-
-            if (toDate != null) {
-                boolean isToday = dayFormat.format(toDate).equals(dayFormat.format(now));
-                long daysRemaining = (toDate.getTime() - now.getTime()) / (1000 * 60 * 60 * 24);
-
-                if (now.after(toDate)) {
-                    tvPermitBadge.setText("Expired");
-                    tvPermitBadge.setBackgroundResource(R.drawable.badge_red);
-                } else if (isToday) {
-                    tvPermitBadge.setText("Expiring Today");
-                    tvPermitBadge.setBackgroundResource(R.drawable.badge_red);
-                } else if (daysRemaining <= 1) {
-                    tvPermitBadge.setText("Expiring");
-                    tvPermitBadge.setBackgroundResource(R.drawable.badge_orange);
-                } else {
-                    tvPermitBadge.setText("Current");
-                    tvPermitBadge.setBackgroundResource(R.drawable.badge_green);
-                }
+        if (!state.sameBattery(previous)) {
+            if (state.batteryButton != null) {
+                btnBattery.setText(state.batteryButton);
+                btnBattery.setVisibility(View.VISIBLE);
+            } else {
+                btnBattery.setVisibility(View.GONE);
             }
-        } catch (ParseException e) {
-            tvPermitBadge.setText("Current");
-            tvPermitBadge.setBackgroundResource(R.drawable.badge_green);
         }
+
+        appliedState = state;
     }
 
-    private void updateSyncTimes() {
-        if (!isAdded() || repository == null) return;
-        tvGitHubSync.setText(TimeUtils.getRelativeTime(repository.getLastSyncTime()));
+    private void applySyncTimes(StatusViewState state) {
+        relativeTimeTicker.bind(tvGitHubSync, state.lastSyncTime);
 
         // Show out-of-sync warning if display has old permit
-        if (repository.isDisplayOutOfSync()) {
+        if (state.outOfSync) {
+            relativeTimeTicker.unbind(tvDisplaySync);
             tvDisplaySync.setText("Out of sync");
             tvDisplaySync.setTextColor(android.graphics.Color.parseColor("#f44336"));
             displaySyncWarning.setVisibility(View.VISIBLE);
         } else {
-            tvDisplaySync.setText(TimeUtils.getRelativeTime(repository.getLastDisplaySyncTime()));
             tvDisplaySync.setTextColor(android.graphics.Color.parseColor("#64b5f6"));
             displaySyncWarning.setVisibility(View.GONE);
+            relativeTimeTicker.unbind(tvDisplaySync);  // rebinding forces the text back
+            relativeTimeTicker.bind(tvDisplaySync, state.lastDisplaySyncTime);
         }
     }
 
-    private void updateBatteryButton() {
-        if (!isAdded()) return;
-        if (!SamsungBatteryHelper.isBatteryOptimizationDisabled(requireContext())) {
-            btnBattery.setVisibility(View.VISIBLE);
-            btnBattery.setText(SamsungBatteryHelper.isSamsungDevice()
-                ? "Fix Battery Settings" : "Disable Battery Optimization");
-        } else {
-            btnBattery.setVisibility(View.GONE);
-        }
-    }
-
-    private double[] getPriceChangeValue(String currentPrice, String previousPrice) {
-        try {
-            double current = Double.parseDouble(currentPrice.replaceAll("[^0-9.]", ""));
-            double previous = Double.parseDouble(previousPrice.replaceAll("[^0-9.]", ""));
-            double diff = current - previous;
-            if (Math.abs(diff) >= 0.01) {
-                return new double[]{diff};
-            }
-        } catch (NumberFormatException e) {
-            // Ignore if price parsing fails
-        }
-        return null;
-    }
-
     private void openBatterySettings() {
         if (SamsungBatteryHelper.isSamsungDevice()) {
             new AlertDialog.Builder(requireContext())
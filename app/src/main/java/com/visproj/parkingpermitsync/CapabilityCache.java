@@ -0,0 +1,61 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+// Last DisplayCapabilities each display announced, by device address, so BleGattService
+// can pick encodings as soon as a known display connects instead of waiting for its
+// write. An entry belongs to one firmware version: a display announcing different
+// firmware replaces it. Lives in the ":ble" process's own prefs file.
+public class CapabilityCache {
+    private static final String PREFS_NAME = "ble_capabilities";
+
+    private final SharedPreferences prefs;
+
+    public CapabilityCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Null if this display never announced anything
+    public DisplayCapabilities get(String address) {
+        // "<version>,<features>,<firmware>"; firmware last as it may contain commas
+        String entry = prefs.getString(address, null);
+        if (entry == null) return null;
+        String[] parts = entry.split(",", 3);
+        if (parts.length != 3) return null;
+        try {
+            return new DisplayCapabilities(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Whether any display seen so far announced `feature`, for what isn't per connection
+    public boolean anySupports(int feature) {
+        for (String address : prefs.getAll().keySet()) {
+            DisplayCapabilities capabilities = get(address);
+            if (capabilities != null && capabilities.supports(feature)) return true;
+        }
+        return false;
+    }
+
+    // Whether every display seen so far announced `feature`; false before any has
+    public boolean allSupport(int feature) {
+        boolean any = false;
+        for (String address : prefs.getAll().keySet()) {
+            DisplayCapabilities capabilities = get(address);
+            if (capabilities == null || !capabilities.supports(feature)) return false;
+            any = true;
+        }
+        return any;
+    }
+
+    public void put(String address, DisplayCapabilities capabilities) {
+        DisplayCapabilities cached = get(address);
+        if (cached != null && cached.sameAs(capabilities)) return;
+        prefs.edit()
+            .putString(address, capabilities.protocolVersion + "," + capabilities.features
+                + "," + capabilities.firmware)
+            .apply();
+    }
+}
@@ -0,0 +1,47 @@
+package com.visproj.parkingpermitsync;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+// What the display writes to the ack characteristic once the permit is on screen:
+//   bytes 0-3  CRC32 of the permit characteristic value it rendered (little-endian)
+//   bytes 4-5  render time in ms (little-endian, 0xFFFF if longer)
+//   byte  6    battery percent, 0xFF if unknown
+//   bytes 7-   firmware version, UTF-8 (may be empty)
+public final class DisplayAck {
+    public static final int BATTERY_UNKNOWN = -1;
+
+    private static final int HEADER_SIZE = 7;
+
+    public final int payloadHash;
+    public final long renderMillis;
+    public final int batteryPercent;
+    public final String firmware;
+
+    private DisplayAck(int payloadHash, long renderMillis, int batteryPercent, String firmware) {
+        this.payloadHash = payloadHash;
+        this.renderMillis = renderMillis;
+        this.batteryPercent = batteryPercent;
+        this.firmware = firmware;
+    }
+
+    // Null if the value is too short to be an ack
+    public static DisplayAck parse(byte[] value) {
+        if (value == null || value.length < HEADER_SIZE) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+        int hash = buffer.getInt();
+        long render = buffer.getShort() & 0xFFFF;
+        int battery = buffer.get() & 0xFF;
+        String firmware = new String(value, HEADER_SIZE, value.length - HEADER_SIZE, StandardCharsets.UTF_8);
+        return new DisplayAck(hash, render, battery <= 100 ? battery : BATTERY_UNKNOWN, firmware);
+    }
+
+    // The hash the display is expected to send back for a characteristic value
+    public static int hash(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,72 @@
+package com.visproj.parkingpermitsync;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// What the display writes to the capabilities characteristic once per connection, so
+// BleGattService knows which wire formats its firmware understands:
+//   byte  0    protocol version
+//   bytes 1-4  feature bitmap, FEATURE_* (little-endian)
+//   bytes 5-   firmware version, UTF-8 (same string as in DisplayAck)
+// Reading the characteristic returns the phone's own version and bitmap (5 bytes).
+// Firmware that never writes it is LEGACY: JSON permit reads and nothing newer is
+// assumed. Newer formats are only ever served to a display that announced them, so
+// firmware writes this first on every connection. The broadcast set is not tied to a
+// connection: it goes out once any display has announced FEATURE_BROADCAST.
+public final class DisplayCapabilities {
+    public static final int PROTOCOL_VERSION = 1;
+
+    public static final int FEATURE_ACK = 1;                  // DisplayAck
+    public static final int FEATURE_SETTINGS = 1 << 1;        // DisplaySettings characteristic
+    public static final int FEATURE_SLOTS = 1 << 2;           // upcoming permit (PermitSlots)
+    public static final int FEATURE_DELTA = 1 << 3;           // PermitDelta
+    public static final int FEATURE_CHANGE_NOTIFY = 1 << 4;   // persistent link notifications
+    public static final int FEATURE_BROADCAST = 1 << 5;       // reads the broadcast set
+    public static final int FEATURE_BINARY = 1 << 6;          // PermitBroadcast bytes over GATT
+
+    public static final int SUPPORTED = FEATURE_ACK | FEATURE_SETTINGS | FEATURE_SLOTS
+        | FEATURE_DELTA | FEATURE_CHANGE_NOTIFY | FEATURE_BROADCAST | FEATURE_BINARY;
+
+    public static final DisplayCapabilities LEGACY = new DisplayCapabilities(0, 0, "");
+
+    private static final int HEADER_SIZE = 5;
+
+    public final int protocolVersion;
+    public final int features;
+    public final String firmware;
+
+    DisplayCapabilities(int protocolVersion, int features, String firmware) {
+        this.protocolVersion = protocolVersion;
+        this.features = features;
+        this.firmware = firmware;
+    }
+
+    // Null if the value is too short
+    public static DisplayCapabilities parse(byte[] value) {
+        if (value == null || value.length < HEADER_SIZE) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+        int version = buffer.get() & 0xFF;
+        int features = buffer.getInt();
+        String firmware = new String(value, HEADER_SIZE, value.length - HEADER_SIZE, StandardCharsets.UTF_8);
+        return new DisplayCapabilities(version, features, firmware);
+    }
+
+    // Value of a read: what this app speaks
+    public static byte[] encodeServer() {
+        return ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+            .put((byte) PROTOCOL_VERSION)
+            .putInt(SUPPORTED)
+            .array();
+    }
+
+    // Only features both sides know; anything the phone doesn't is ignored
+    public boolean supports(int feature) {
+        return protocolVersion >= 1 && (features & SUPPORTED & feature) == feature;
+    }
+
+    public boolean sameAs(DisplayCapabilities other) {
+        return protocolVersion == other.protocolVersion && features == other.features
+            && firmware.equals(other.firmware);
+    }
+}
@@ -0,0 +1,32 @@
+package com.visproj.parkingpermitsync;
+
+// Value of BleGattService's settings characteristic, kept apart from the permit so a
+// display with FEATURE_SETTINGS takes a settings change in a few bytes instead of a
+// permit re-read (the flip stays in the permit JSON for firmware without it):
+//   byte  0    format (FORMAT)
+//   bytes 1-2  settings version (little-endian), bumped on every change
+//   byte  3    flags: bit 0 = flipped, bit 1 = persistent link (stay connected at a
+//              slow interval and subscribe to the change characteristic)
+// The display applies it only when the version differs from what it last applied.
+// The central picks the connection interval, so the slow interval is the display's to set.
+public final class DisplaySettings {
+    public static final byte FORMAT = 1;
+
+    private static final int FLAG_FLIPPED = 0x01;
+    private static final int FLAG_PERSISTENT_LINK = 0x02;
+
+    private DisplaySettings() {}
+
+    public static byte[] encode(int version, boolean flipped, boolean persistentLink) {
+        return new byte[] {
+            FORMAT,
+            (byte) version,
+            (byte) (version >> 8),
+            flags(flipped, persistentLink)
+        };
+    }
+
+    static byte flags(boolean flipped, boolean persistentLink) {
+        return (byte) ((flipped ? FLAG_FLIPPED : 0) | (persistentLink ? FLAG_PERSISTENT_LINK : 0));
+    }
+}
@@ -32,6 +32,8 @@ public class DisplaySyncHelper {
 
     private static final String CMD_SYNC = "SYNC";
     private static final String CMD_FORCE = "FORCE";
+    // Re-read only BleGattService's settings characteristic, not the permit
+    private static final String CMD_SETTINGS = "SETTINGS";
 
     private static final long SCAN_TIMEOUT = 10000; // 10 seconds
 
@@ -61,8 +63,18 @@ public class DisplaySyncHelper {
     }
 
     public void syncDisplay(boolean force, SyncCallback callback) {
+        startSync(force ? CMD_FORCE : CMD_SYNC, callback);
+    }
+
+    // Tells the display its settings changed; it fetches a few bytes instead of the permit.
+    // Only for a display that announced FEATURE_SETTINGS, older firmware ignores it.
+    public void sendSettings(SyncCallback callback) {
+        startSync(CMD_SETTINGS, callback);
+    }
+
+    private void startSync(String command, SyncCallback callback) {
         this.callback = callback;
-        this.pendingCommand = force ? CMD_FORCE : CMD_SYNC;
+        this.pendingCommand = command;
 
         if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
             callback.onError("Bluetooth not available");
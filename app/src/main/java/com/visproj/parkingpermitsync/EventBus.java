@@ -0,0 +1,127 @@
+package com.visproj.parkingpermitsync;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+// In-process channel for one event type, delivered on each subscriber's executor.
+// publish() takes no lock: subscribers are a copy-on-write snapshot and the latest
+// value is an atomic reference.
+//
+// A sticky bus carries state: it remembers the latest value, hands it to new
+// subscribers straight away, and coalesces bursts so a subscriber only sees the newest
+// value once its executor gets to it (no allocation per publish). A plain bus carries
+// one-off events and delivers every one of them.
+public final class EventBus<E> {
+
+    public interface Subscriber<E> {
+        void onEvent(E event);
+    }
+
+    private final class Registration implements Runnable {
+        final Subscriber<E> subscriber;
+        final Executor executor;
+        // Sticky only: a delivery is queued and will read the latest value when it runs
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean active = true;
+
+        Registration(Subscriber<E> subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        void deliverLatest() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            E event = latest.get();
+            if (active && event != null) {
+                subscriber.onEvent(event);
+            }
+        }
+    }
+
+    private final boolean sticky;
+    private final AtomicReference<E> latest = new AtomicReference<>();
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private EventBus(boolean sticky, E initial) {
+        this.sticky = sticky;
+        this.latest.set(initial);
+    }
+
+    // State channel; `initial` is what subscribers get before anything is published
+    public static <E> EventBus<E> sticky(E initial) {
+        return new EventBus<>(true, initial);
+    }
+
+    public static <E> EventBus<E> events() {
+        return new EventBus<>(false, null);
+    }
+
+    // A sticky bus delivers its current value right away
+    public void subscribe(Subscriber<E> subscriber, Executor executor) {
+        Registration registration = new Registration(subscriber, executor);
+        registrations.add(registration);
+        if (sticky) {
+            registration.deliverLatest();
+        }
+    }
+
+    public void unsubscribe(Subscriber<E> subscriber) {
+        for (Registration registration : registrations) {
+            if (registration.subscriber == subscriber) {
+                registration.active = false;
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    public void publish(E event) {
+        if (sticky) {
+            latest.set(event);
+            for (Registration registration : registrations) {
+                registration.deliverLatest();
+            }
+        } else {
+            for (Registration registration : registrations) {
+                registration.executor.execute(() -> {
+                    if (registration.active) {
+                        registration.subscriber.onEvent(event);
+                    }
+                });
+            }
+        }
+    }
+
+    // Sticky only: derive the next state from the current one without losing a
+    // concurrent update. Subscribers hear about it only if the state object changed.
+    public E update(UnaryOperator<E> change) {
+        E current;
+        E next;
+        do {
+            current = latest.get();
+            next = change.apply(current);
+        } while (!latest.compareAndSet(current, next));
+
+        if (next != current) {
+            for (Registration registration : registrations) {
+                registration.deliverLatest();
+            }
+        }
+        return next;
+    }
+
+    // Latest value of a sticky bus
+    public E get() {
+        return latest.get();
+    }
+}
@@ -5,12 +5,11 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import com.google.gson.Gson;
-
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -26,15 +25,17 @@ public class GitHubSyncTask {
     private final Context context;
     private final PermitRepository repository;
     private final OkHttpClient client;
-    private final Gson gson;
     private final ExecutorService executor;
     private final Handler mainHandler;
 
+    private volatile Call currentCall;
+    private volatile boolean cancelled = false;
+    private boolean saving = false;   // guarded by this; past this point cancel() is refused
+
     public GitHubSyncTask(Context context) {
         this.context = context;
-        this.repository = new PermitRepository(context);
+        this.repository = PermitRepository.getInstance(context);
         this.client = new OkHttpClient();
-        this.gson = new Gson();
         this.executor = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
@@ -50,14 +51,20 @@ public class GitHubSyncTask {
                     .header("Cache-Control", "no-cache")
                     .build();
 
-                try (Response response = client.newCall(request).execute()) {
+                Call call = client.newCall(request);
+                currentCall = call;
+                if (cancelled) {
+                    call.cancel();
+                }
+
+                try (Response response = call.execute()) {
                     if (!response.isSuccessful()) {
                         notifyError(callback, "HTTP " + response.code());
                         return;
                     }
 
                     String json = response.body().string();
-                    PermitData newPermit = gson.fromJson(json, PermitData.class);
+                    PermitData newPermit = PermitCodec.decode(json);
 
                     if (newPermit == null || !newPermit.isValid()) {
                         notifyError(callback, "Invalid permit data");
@@ -68,6 +75,13 @@ public class GitHubSyncTask {
                     boolean isNew = oldPermit == null ||
                         !oldPermit.permitNumber.equals(newPermit.permitNumber);
 
+                    synchronized (this) {
+                        if (cancelled) {
+                            notifyError(callback, "Cancelled");
+                            return;
+                        }
+                        saving = true;
+                    }
                     repository.savePermit(newPermit);
                     Log.d(TAG, "Synced permit: " + newPermit.permitNumber + " (new=" + isNew + ")");
 
@@ -75,11 +89,29 @@ public class GitHubSyncTask {
                 }
             } catch (IOException e) {
                 Log.e(TAG, "Sync failed", e);
-                notifyError(callback, e.getMessage());
+                notifyError(callback, cancelled ? "Cancelled" : e.getMessage());
+            } finally {
+                currentCall = null;
             }
         });
     }
 
+    // Abort the in-flight request (if any). The callback still fires with an error.
+    // Returns false if the permit is already being stored: the sync is then left to
+    // finish and the success callback still fires.
+    public boolean cancel() {
+        synchronized (this) {
+            if (saving) return false;
+            cancelled = true;
+        }
+        Call call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+        executor.shutdown();
+        return true;
+    }
+
     private void notifySuccess(SyncCallback callback, PermitData permit, boolean isNew) {
         if (callback != null) {
             mainHandler.post(() -> callback.onSuccess(permit, isNew));
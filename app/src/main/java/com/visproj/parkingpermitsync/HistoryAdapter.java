@@ -0,0 +1,71 @@
+package com.visproj.parkingpermitsync;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Rows for HistoryFragment. Data comes from HistoryPager; a row whose page isn't in
+// memory yet is bound as a placeholder and rebound when the page arrives.
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView number;
+        final TextView price;
+        final TextView dates;
+        final TextView vehicle;
+
+        ViewHolder(View view) {
+            super(view);
+            number = view.findViewById(R.id.tvHistoryNumber);
+            price = view.findViewById(R.id.tvHistoryPrice);
+            dates = view.findViewById(R.id.tvHistoryDates);
+            vehicle = view.findViewById(R.id.tvHistoryVehicle);
+        }
+    }
+
+    private HistoryPager pager;
+
+    public void setPager(HistoryPager pager) {
+        this.pager = pager;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+            .inflate(R.layout.item_permit_history, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        ParsedPermit parsed = pager.get(position);
+        if (parsed == null) {
+            holder.number.setText("Loading...");
+            holder.price.setText("");
+            holder.dates.setText("");
+            holder.vehicle.setText("");
+            return;
+        }
+
+        PermitData permit = parsed.permit;
+        holder.number.setText(permit.permitNumber);
+        if (permit.price != null && !permit.price.isEmpty()) {
+            // Change against the permit before it, same as the status card
+            holder.price.setText(PriceText.of(parsed, pager.getOlder(position)));
+        } else {
+            holder.price.setText("");
+        }
+        holder.dates.setText(PermitFormatter.formatRange(parsed));
+        holder.vehicle.setText(StatusViewState.vehicleLabel(permit));
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager != null ? pager.getCount() : 0;
+    }
+}
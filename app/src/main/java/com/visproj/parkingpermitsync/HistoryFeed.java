@@ -0,0 +1,41 @@
+package com.visproj.parkingpermitsync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Pages of past permits, newest first, read from the local history log
+// (PermitRepository.getPermitHistory). The log holds every permit this phone fetched
+// or put on the display since it was installed; the site has no per-user history API
+// to page instead, so HistoryFragment links to its history page for older permits.
+public class HistoryFeed {
+    public static final int PAGE_SIZE = 20;
+
+    public static final class Page {
+        public final int index;
+        public final List<ParsedPermit> permits;
+        public final boolean hasMore;
+
+        Page(int index, List<ParsedPermit> permits, boolean hasMore) {
+            this.index = index;
+            this.permits = permits;
+            this.hasMore = hasMore;
+        }
+    }
+
+    private final PermitRepository repository;
+
+    public HistoryFeed(PermitRepository repository) {
+        this.repository = repository;
+    }
+
+    // Blocking (may read the log from disk); call off the main thread
+    public Page load(int index) {
+        // Ask for one extra to know whether another page follows
+        List<ParsedPermit> permits = repository.getPermitHistory(index * PAGE_SIZE, PAGE_SIZE + 1);
+        boolean hasMore = permits.size() > PAGE_SIZE;
+        if (hasMore) {
+            permits = new ArrayList<>(permits.subList(0, PAGE_SIZE));
+        }
+        return new Page(index, permits, hasMore);
+    }
+}
@@ -0,0 +1,105 @@
+package com.visproj.parkingpermitsync;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Native list of past permits, loaded page by page from HistoryFeed. Replaces the
+// History WebView. The feed only has what this install saw, so the site's history
+// page stays one tap away in WebPageActivity for anything older.
+public class HistoryFragment extends Fragment {
+    private static final String WEB_HISTORY_URL = "https://fucktorontoparking.ca/history/";
+
+    private RecyclerView historyList;
+    private TextView tvEmpty;
+    private TextView tvWebHistory;
+    private ProgressBar progressBar;
+
+    private HistoryAdapter adapter;
+    private HistoryPager pager;
+
+    private final HistoryPager.Listener pagerListener = new HistoryPager.Listener() {
+        @Override
+        public void onItemsInserted(int position, int count) {
+            adapter.notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onItemsChanged(int position, int count) {
+            adapter.notifyItemRangeChanged(position, count);
+        }
+
+        @Override
+        public void onReset() {
+            adapter.notifyDataSetChanged();
+        }
+
+        @Override
+        public void onLoadFinished(boolean empty) {
+            if (progressBar == null) return;
+            progressBar.setVisibility(View.GONE);
+            tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+            tvWebHistory.setVisibility(View.VISIBLE);
+        }
+    };
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_history, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        historyList = view.findViewById(R.id.historyList);
+        tvEmpty = view.findViewById(R.id.tvHistoryEmpty);
+        progressBar = view.findViewById(R.id.historyProgress);
+        tvWebHistory = view.findViewById(R.id.tvWebHistory);
+        tvWebHistory.setOnClickListener(v -> startActivity(
+            WebPageActivity.newIntent(requireContext(), WEB_HISTORY_URL, "Permit History")));
+
+        adapter = new HistoryAdapter();
+        pager = new HistoryPager(new HistoryFeed(PermitRepository.getInstance(requireContext())), pagerListener);
+        adapter.setPager(pager);
+
+        historyList.setLayoutManager(new LinearLayoutManager(requireContext()));
+        historyList.setAdapter(adapter);
+        // Rows are all the same height, so the list never has to re-measure itself
+        historyList.setHasFixedSize(true);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // First visit only: the list and its window of pages survive tab switches
+        pager.start();
+    }
+
+    @Override
+    public void onDestroyView() {
+        pager.shutdown();
+        historyList.setAdapter(null);
+        historyList = null;
+        tvEmpty = null;
+        tvWebHistory = null;
+        progressBar = null;
+        super.onDestroyView();
+    }
+
+    public void refresh() {
+        if (pager != null) {
+            pager.reload();
+        }
+    }
+}
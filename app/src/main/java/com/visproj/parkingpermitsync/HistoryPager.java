@@ -0,0 +1,198 @@
+package com.visproj.parkingpermitsync;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Incremental list over HistoryFeed pages. Only a window of decoded pages is held in
+// memory; the page used least recently is dropped once more than MAX_PAGES are loaded,
+// and is fetched again if the user scrolls back to it. Positions whose page isn't
+// loaded yet return null (shown as placeholder rows) and trigger the load.
+// Main thread only; pages are fetched on a background thread.
+public class HistoryPager {
+    private static final String TAG = "HistoryPager";
+
+    static final int MAX_PAGES = 4;
+    // Start loading the next page when this close to the end of what's known
+    private static final int PREFETCH_DISTANCE = 5;
+
+    public interface Listener {
+        void onItemsInserted(int position, int count);
+        void onItemsChanged(int position, int count);
+        void onReset();
+        void onLoadFinished(boolean empty);
+    }
+
+    private final HistoryFeed feed;
+    private final Listener listener;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // page index -> page, eldest = least recently used
+    private final LinkedHashMap<Integer, HistoryFeed.Page> window =
+        new LinkedHashMap<Integer, HistoryFeed.Page>(MAX_PAGES + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HistoryFeed.Page> eldest) {
+                if (size() > MAX_PAGES) {
+                    Log.d(TAG, "Evicting page " + eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    private final Set<Integer> loading = new HashSet<>();
+
+    private int count = 0;            // items in all pages seen so far
+    private boolean hasMore = true;
+    private int generation = 0;       // bumped on reset, drops stale loads
+
+    // Pages are fetched again when their rows are next bound: moderate pressure keeps
+    // only the page used last, low pressure drops the window entirely
+    private final MemoryRegistry.Trimmable memory = new MemoryRegistry.Trimmable() {
+        @Override
+        public long bytesHeld() {
+            long bytes = 0;
+            for (HistoryFeed.Page page : window.values()) {
+                for (ParsedPermit permit : page.permits) {
+                    bytes += permit.estimatedBytes();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void shrink() {
+            evictDownTo(1);
+        }
+
+        @Override
+        public void clear() {
+            evictDownTo(0);
+        }
+    };
+
+    public HistoryPager(HistoryFeed feed, Listener listener) {
+        this.feed = feed;
+        this.listener = listener;
+        MemoryRegistry.getInstance().register("history_pages", memory,
+            MemoryRegistry.Pressure.MODERATE, MemoryRegistry.Pressure.LOW);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Permit at `position`, or null while its page is (re)loading
+    public ParsedPermit get(int position) {
+        if (position < 0 || position >= count) return null;
+        if (hasMore && position >= count - PREFETCH_DISTANCE) {
+            load(count / HistoryFeed.PAGE_SIZE);
+        }
+
+        int index = position / HistoryFeed.PAGE_SIZE;
+        HistoryFeed.Page page = window.get(index);
+        if (page == null) {
+            load(index);
+            return null;
+        }
+        int offset = position % HistoryFeed.PAGE_SIZE;
+        return offset < page.permits.size() ? page.permits.get(offset) : null;
+    }
+
+    // The permit before the one at `position` (the next row down), without loading
+    // anything: the row is rebound once that page arrives
+    public ParsedPermit getOlder(int position) {
+        int next = position + 1;
+        if (next >= count) return null;
+        HistoryFeed.Page page = window.get(next / HistoryFeed.PAGE_SIZE);
+        if (page == null) return null;
+        int offset = next % HistoryFeed.PAGE_SIZE;
+        return offset < page.permits.size() ? page.permits.get(offset) : null;
+    }
+
+    public void start() {
+        if (count == 0) {
+            load(0);
+        }
+    }
+
+    public void reload() {
+        generation++;
+        window.clear();
+        loading.clear();
+        count = 0;
+        hasMore = true;
+        listener.onReset();
+        load(0);
+    }
+
+    public void shutdown() {
+        generation++;
+        loader.shutdownNow();
+        MemoryRegistry.getInstance().unregister(memory);
+    }
+
+    // Drop least recently used pages until `keep` remain; their rows turn back into
+    // placeholders and reload when bound
+    private void evictDownTo(int keep) {
+        Iterator<Map.Entry<Integer, HistoryFeed.Page>> it = window.entrySet().iterator();
+        while (window.size() > keep && it.hasNext()) {
+            HistoryFeed.Page page = it.next().getValue();
+            it.remove();
+            int start = page.index * HistoryFeed.PAGE_SIZE;
+            int end = Math.min(count, start + page.permits.size());
+            if (end > start) {
+                listener.onItemsChanged(start, end - start);
+            }
+        }
+    }
+
+    private void load(int index) {
+        if (window.containsKey(index) || !loading.add(index) || loader.isShutdown()) return;
+        int requested = generation;
+        loader.execute(() -> {
+            HistoryFeed.Page page = feed.load(index);
+            mainHandler.post(() -> onPageLoaded(requested, page));
+        });
+    }
+
+    private void onPageLoaded(int requested, HistoryFeed.Page page) {
+        if (requested != generation) return;
+        loading.remove(page.index);
+
+        window.put(page.index, page);
+        int start = page.index * HistoryFeed.PAGE_SIZE;
+        int end = start + page.permits.size();
+
+        if (end > count) {
+            int oldCount = count;
+            count = end;
+            hasMore = page.hasMore;
+            listener.onItemsInserted(oldCount, end - oldCount);
+            // The row above this page can show its price change now
+            if (oldCount > 0) {
+                listener.onItemsChanged(oldCount - 1, 1);
+            }
+        } else {
+            if (end == count) {
+                hasMore = page.hasMore;  // last page came back empty or unchanged
+            }
+            // A page reloaded after eviction; rebind it and the row above it
+            int from = Math.max(0, start - 1);
+            if (end > from) {
+                listener.onItemsChanged(from, end - from);
+            }
+        }
+        if (page.index == 0) {
+            listener.onLoadFinished(page.permits.isEmpty());
+        }
+    }
+}
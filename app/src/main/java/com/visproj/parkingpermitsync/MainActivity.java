@@ -6,15 +6,19 @@ import android.app.NotificationManager;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothManager;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.Toast;
 
@@ -43,6 +47,9 @@ public class MainActivity extends AppCompatActivity {
 
     private final String[] tabTitles = {"Display Status", "History"};
 
+    // Startup time is only meaningful for the first activity of a fresh process
+    private static boolean startupRecorded = false;
+
     private final ActivityResultLauncher<String[]> permissionLauncher =
         registerForActivityResult(new ActivityResultContracts.RequestMultiplePermissions(), result -> {
             // Check only Bluetooth permissions - notifications are optional
@@ -83,8 +90,8 @@ public class MainActivity extends AppCompatActivity {
         pagerAdapter = new MainPagerAdapter(this);
         viewPager.setAdapter(pagerAdapter);
 
-        // Preload both tabs so History WebView loads in background
-        viewPager.setOffscreenPageLimit(2);
+        // History loads its first page on first visit, not at startup; see HistoryFragment
+        recordStartup(savedInstanceState == null);
 
         new TabLayoutMediator(tabLayout, viewPager, (tab, position) -> {
             tab.setText(tabTitles[position]);
@@ -94,6 +101,35 @@ public class MainActivity extends AppCompatActivity {
         checkBluetoothAndStart();
     }
 
+    // Time from process start to the first drawn frame (cold starts only) and the
+    // resident memory right after. Instrumentation only: no with/without figures have
+    // been taken, so compare startup.first_frame and memory.startup in Diagnostics
+    // across builds on a device before claiming a saving.
+    private void recordStartup(boolean firstCreate) {
+        boolean coldStart = firstCreate && !startupRecorded;
+        startupRecorded = true;
+
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn = false;
+
+            @Override
+            public void onDraw() {
+                if (drawn) return;
+                drawn = true;
+                // Listeners can't be removed from inside onDraw
+                content.post(() -> content.getViewTreeObserver().removeOnDrawListener(this));
+
+                Metrics metrics = Metrics.getInstance(MainActivity.this);
+                if (coldStart) {
+                    long elapsed = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+                    metrics.recordDuration("startup.first_frame", elapsed);
+                }
+                metrics.recordPss("memory.startup");
+            }
+        });
+    }
+
     private void checkBatteryOptimizationFirstLaunch() {
         if (SamsungBatteryHelper.isBatteryOptimizationDisabled(this)) {
             return;
@@ -253,6 +289,9 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        // Cache sizes and metrics readout, debug builds only
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        menu.findItem(R.id.action_diagnostics).setVisible(debuggable);
         return true;
     }
 
@@ -268,17 +307,25 @@ public class MainActivity extends AppCompatActivity {
         } else if (id == R.id.action_email_settings) {
             openEmailSettings();
             return true;
+        } else if (id == R.id.action_diagnostics) {
+            showDiagnostics();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
     private void openDisplaySettings() {
-        PermitRepository repository = new PermitRepository(this);
+        PermitRepository repository = PermitRepository.getInstance(this);
         boolean currentFlip = repository.isDisplayFlipped();
 
         View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_display_settings, null);
         SwitchCompat switchFlip = dialogView.findViewById(R.id.switchFlipDisplay);
         switchFlip.setChecked(currentFlip);
+        boolean currentPersistentLink = repository.isPersistentLinkEnabled();
+        SwitchCompat switchPersistentLink = dialogView.findViewById(R.id.switchPersistentLink);
+        switchPersistentLink.setChecked(currentPersistentLink);
+        SwitchCompat switchBroadcast = dialogView.findViewById(R.id.switchBroadcastMode);
+        switchBroadcast.setChecked(repository.isBroadcastModeEnabled());
 
         AlertDialog dialog = new AlertDialog.Builder(this)
             .setTitle("Display Settings")
@@ -290,9 +337,13 @@ public class MainActivity extends AppCompatActivity {
         dialog.setOnShowListener(d -> {
             Button okButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
             okButton.setOnClickListener(v -> {
+                // Picked up by the BLE service straight away, nothing to sync
+                repository.setBroadcastModeEnabled(switchBroadcast.isChecked());
                 boolean newFlip = switchFlip.isChecked();
-                if (newFlip != currentFlip) {
+                boolean newPersistentLink = switchPersistentLink.isChecked();
+                if (newFlip != currentFlip || newPersistentLink != currentPersistentLink) {
                     repository.setDisplayFlipped(newFlip);
+                    repository.setPersistentLinkEnabled(newPersistentLink);
                     // Disable button and show syncing state
                     okButton.setEnabled(false);
                     okButton.setAlpha(0.5f);
@@ -302,7 +353,7 @@ public class MainActivity extends AppCompatActivity {
 
                     BleStatusFragment fragment = pagerAdapter.getBleStatusFragment();
                     if (fragment != null) {
-                        fragment.triggerDisplaySync(new BleStatusFragment.DisplaySyncCallback() {
+                        fragment.triggerSettingsSync(new BleStatusFragment.DisplaySyncCallback() {
                             @Override
                             public void onSuccess() {
                                 Toast.makeText(MainActivity.this, "Display settings updated", Toast.LENGTH_SHORT).show();
@@ -329,7 +380,7 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void openNotificationSettings() {
-        PermitRepository repository = new PermitRepository(this);
+        PermitRepository repository = PermitRepository.getInstance(this);
 
         View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_notification_settings, null);
         SwitchCompat switchReminders = dialogView.findViewById(R.id.switchReminders);
@@ -375,22 +426,29 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-private void openEmailSettings() {
-        WebViewFragment webViewFragment = pagerAdapter.getWebViewFragment();
-        if (webViewFragment != null) {
-            webViewFragment.loadUrl("https://fucktorontoparking.ca/settings/");
-            viewPager.setCurrentItem(1);
-        }
+    private void showDiagnostics() {
+        Metrics metrics = Metrics.getInstance(this);
+        String text = "Memory held by caches\n" + MemoryRegistry.getInstance().dump()
+            + "\nDisplay capabilities\n"
+            + rate("known on connect", metrics.get("ble.caps_cached"), metrics.get("ble.caps_unknown"))
+            + rate("cache confirmed", metrics.get("ble.caps_confirmed"), metrics.get("ble.caps_changed"))
+            + "\nMetrics\n" + metrics.dump();
+        new AlertDialog.Builder(this)
+            .setTitle("Diagnostics")
+            .setMessage(text)
+            .setPositiveButton("OK", null)
+            .show();
     }
 
-    @Override
-    public void onBackPressed() {
-        // Handle WebView back navigation
-        WebViewFragment webViewFragment = pagerAdapter.getWebViewFragment();
-        if (viewPager.getCurrentItem() == 1 && webViewFragment != null && webViewFragment.canGoBack()) {
-            webViewFragment.goBack();
-        } else {
-            super.onBackPressed();
-        }
+    // "label: 9 of 10 (90%)"
+    private static String rate(String label, long hits, long misses) {
+        long total = hits + misses;
+        return label + ": " + hits + " of " + total
+            + (total > 0 ? " (" + (hits * 100 / total) + "%)" : "") + "\n";
+    }
+
+    private void openEmailSettings() {
+        startActivity(WebPageActivity.newIntent(this,
+            "https://fucktorontoparking.ca/settings/", "Email Settings"));
     }
 }
@@ -8,7 +8,7 @@ import androidx.viewpager2.adapter.FragmentStateAdapter;
 public class MainPagerAdapter extends FragmentStateAdapter {
 
     private BleStatusFragment bleStatusFragment;
-    private WebViewFragment webViewFragment;
+    private HistoryFragment historyFragment;
 
     public MainPagerAdapter(@NonNull FragmentActivity fragmentActivity) {
         super(fragmentActivity);
@@ -21,8 +21,8 @@ public class MainPagerAdapter extends FragmentStateAdapter {
             bleStatusFragment = new BleStatusFragment();
             return bleStatusFragment;
         } else {
-            webViewFragment = new WebViewFragment();
-            return webViewFragment;
+            historyFragment = new HistoryFragment();
+            return historyFragment;
         }
     }
 
@@ -35,7 +35,7 @@ public class MainPagerAdapter extends FragmentStateAdapter {
         return bleStatusFragment;
     }
 
-    public WebViewFragment getWebViewFragment() {
-        return webViewFragment;
+    public HistoryFragment getHistoryFragment() {
+        return historyFragment;
     }
 }
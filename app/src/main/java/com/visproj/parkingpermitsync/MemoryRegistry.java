@@ -0,0 +1,158 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Process-wide list of in-memory caches and what each gives back under memory
+// pressure. ParkingPermitApp forwards onTrimMemory() here; every cache declares the
+// pressure at which it shrinks and the pressure at which it is dropped outright, and
+// reports roughly how many bytes it holds so the diagnostics readout can show them.
+// Trims arrive on the main thread; caches guard their own state.
+public class MemoryRegistry {
+    private static final String TAG = "MemoryRegistry";
+
+    // bytesHeld() for caches that can't measure themselves (e.g. the WebView)
+    public static final long UNKNOWN = -1;
+
+    // Trim levels folded into one ordering. On API 34+ only UI_HIDDEN and BACKGROUND
+    // are delivered, so BACKGROUND has to count as real pressure.
+    public enum Pressure {
+        NONE,
+        UI_HIDDEN,   // user left the app, nothing is short yet
+        MODERATE,    // running, memory getting tight
+        LOW,         // running low, or we are cached in the background
+        CRITICAL;    // next in line to be killed
+
+        public static Pressure of(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return CRITICAL;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return LOW;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return UI_HIDDEN;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return CRITICAL;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return LOW;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) return MODERATE;
+            return NONE;
+        }
+    }
+
+    public interface Trimmable {
+        // Rough heap footprint, or UNKNOWN
+        long bytesHeld();
+
+        // Keep only what is needed right now
+        void shrink();
+
+        // Drop everything that can be rebuilt
+        void clear();
+    }
+
+    private static class Registration {
+        final String name;
+        final Trimmable cache;
+        final Pressure shrinkAt;    // null = never shrinks
+        final Pressure clearAt;     // null = never cleared
+
+        Registration(String name, Trimmable cache, Pressure shrinkAt, Pressure clearAt) {
+            this.name = name;
+            this.cache = cache;
+            this.shrinkAt = shrinkAt;
+            this.clearAt = clearAt;
+        }
+    }
+
+    private static MemoryRegistry instance;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    public static synchronized MemoryRegistry getInstance() {
+        if (instance == null) {
+            instance = new MemoryRegistry();
+        }
+        return instance;
+    }
+
+    private MemoryRegistry() {}
+
+    public void register(String name, Trimmable cache, Pressure shrinkAt, Pressure clearAt) {
+        registrations.add(new Registration(name, cache, shrinkAt, clearAt));
+    }
+
+    public void unregister(Trimmable cache) {
+        for (Registration registration : registrations) {
+            if (registration.cache == cache) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    // Applies each cache's policy for this level; returns the measured bytes released
+    public long onTrimMemory(int level) {
+        Pressure pressure = Pressure.of(level);
+        long released = 0;
+        for (Registration registration : registrations) {
+            boolean clear = registration.clearAt != null && pressure.compareTo(registration.clearAt) >= 0;
+            boolean shrink = !clear && registration.shrinkAt != null
+                && pressure.compareTo(registration.shrinkAt) >= 0;
+            if (!clear && !shrink) continue;
+
+            long before = registration.cache.bytesHeld();
+            if (clear) {
+                registration.cache.clear();
+            } else {
+                registration.cache.shrink();
+            }
+            long after = registration.cache.bytesHeld();
+            if (before != UNKNOWN && after != UNKNOWN && before > after) {
+                released += before - after;
+            }
+            Log.d(TAG, registration.name + (clear ? " cleared" : " shrunk") + " on trim level "
+                + level + ": " + format(before) + " -> " + format(after));
+        }
+        return released;
+    }
+
+    public long totalBytes() {
+        long total = 0;
+        for (Registration registration : registrations) {
+            long bytes = registration.cache.bytesHeld();
+            if (bytes != UNKNOWN) total += bytes;
+        }
+        return total;
+    }
+
+    // One "name: size (shrink at X, clear at Y)" line per cache, then the total
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Registration registration : registrations) {
+            sb.append(registration.name).append(": ")
+                .append(format(registration.cache.bytesHeld()))
+                .append(" (shrink ").append(policy(registration.shrinkAt))
+                .append(", clear ").append(policy(registration.clearAt))
+                .append(")\n");
+        }
+        sb.append("total: ").append(format(totalBytes())).append('\n');
+        return sb.toString();
+    }
+
+    // Heap estimate for a few strings: object header plus UTF-16 chars
+    public static long estimate(String... strings) {
+        long bytes = 0;
+        for (String s : strings) {
+            if (s != null) bytes += 40 + 2L * s.length();
+        }
+        return bytes;
+    }
+
+    private static String policy(Pressure pressure) {
+        return pressure != null ? "at " + pressure.name().toLowerCase(Locale.US) : "never";
+    }
+
+    private static String format(long bytes) {
+        if (bytes == UNKNOWN) return "unmeasured";
+        if (bytes < 1024) return bytes + " B";
+        return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+    }
+}
@@ -0,0 +1,211 @@
+package com.visproj.parkingpermitsync;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Small persisted counters and duration summaries, so we can see over days/weeks
+// how background work actually behaves (wakeups, BLE transfers, caches).
+// Values live in their own prefs file and never touch permit data.
+// SharedPreferences has a single writer: in the ":ble" process updates are buffered in
+// memory and forwarded to the main process through PermitProvider in one batch, but
+// only while the main process is already running. A metric must never be what starts
+// it (e.g. a trim count under memory pressure). Reads in the ":ble" process return
+// nothing.
+public class Metrics {
+    private static final String TAG = "Metrics";
+    private static final String PREFS_NAME = "metrics";
+
+    // Upper bounds (ms) of the duration histogram buckets; anything above goes in "inf"
+    private static final long[] BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    // ":ble" process: how soon buffered updates are offered, and how often that is
+    // retried while the main process isn't running
+    private static final long FLUSH_DELAY_MS = 10 * 1000;
+    private static final long FLUSH_RETRY_MS = 60 * 1000;
+    // Durations are kept one by one; beyond this many the newest are dropped
+    private static final int MAX_PENDING_DURATIONS = 64;
+
+    private static Metrics instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final PermitStoreClient remote;
+
+    // ":ble" process only, guarded by this. Adds and sets coalesce per name.
+    private final Map<String, Long> pendingAdds = new LinkedHashMap<>();
+    private final Map<String, Long> pendingSets = new LinkedHashMap<>();
+    private final List<String> pendingDurationNames = new ArrayList<>();
+    private final List<Long> pendingDurations = new ArrayList<>();
+    private ScheduledExecutorService flusher;
+    private boolean flushScheduled = false;
+
+    public static synchronized Metrics getInstance(Context context) {
+        if (instance == null) {
+            instance = new Metrics(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private Metrics(Context context) {
+        this.context = context;
+        if (ParkingPermitApp.isBleProcess()) {
+            prefs = null;
+            remote = new PermitStoreClient(context);
+        } else {
+            prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            remote = null;
+        }
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public synchronized void add(String name, long delta) {
+        if (remote != null) {
+            Long pending = pendingAdds.get(name);
+            pendingAdds.put(name, (pending != null ? pending : 0) + delta);
+            scheduleFlush(FLUSH_DELAY_MS);
+            return;
+        }
+        prefs.edit().putLong(name, prefs.getLong(name, 0) + delta).apply();
+    }
+
+    public synchronized void set(String name, long value) {
+        if (remote != null) {
+            pendingSets.put(name, value);
+            scheduleFlush(FLUSH_DELAY_MS);
+            return;
+        }
+        prefs.edit().putLong(name, value).apply();
+    }
+
+    // Records count, total, max, last and a coarse histogram for a duration
+    public synchronized void recordDuration(String name, long millis) {
+        if (remote != null) {
+            if (pendingDurations.size() < MAX_PENDING_DURATIONS) {
+                pendingDurationNames.add(name);
+                pendingDurations.add(millis);
+            } else {
+                Log.w(TAG, "Dropped " + name + ": too many durations pending");
+            }
+            scheduleFlush(FLUSH_DELAY_MS);
+            return;
+        }
+
+        String bucket = name + ".le_inf";
+        for (long bound : BUCKETS_MS) {
+            if (millis <= bound) {
+                bucket = name + ".le_" + bound;
+                break;
+            }
+        }
+
+        prefs.edit()
+            .putLong(name + ".count", prefs.getLong(name + ".count", 0) + 1)
+            .putLong(name + ".total_ms", prefs.getLong(name + ".total_ms", 0) + millis)
+            .putLong(name + ".max_ms", Math.max(prefs.getLong(name + ".max_ms", 0), millis))
+            .putLong(name + ".last_ms", millis)
+            .putLong(bucket, prefs.getLong(bucket, 0) + 1)
+            .apply();
+
+        Log.d(TAG, name + ": " + millis + " ms");
+    }
+
+    // Proportional set size of the calling process; Debug.getPss() walks /proc, so it
+    // runs on a background thread
+    public void recordPss(String name) {
+        new Thread(() -> {
+            long pssKb = Debug.getPss();
+            set(name + ".pss_kb", pssKb);
+            Log.d(TAG, name + ": " + pssKb + " KB PSS");
+        }, "metrics-pss").start();
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (flushScheduled) return;
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor();
+        }
+        flushScheduled = true;
+        flusher.schedule(this::flush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ":ble" process: hand everything buffered to the main process in one call
+    private void flush() {
+        if (!isMainProcessRunning()) {
+            synchronized (this) {
+                flushScheduled = false;
+                scheduleFlush(FLUSH_RETRY_MS);
+            }
+            return;
+        }
+
+        List<String> ops = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Long> values = new ArrayList<>();
+        synchronized (this) {
+            flushScheduled = false;
+            for (Map.Entry<String, Long> entry : pendingAdds.entrySet()) {
+                ops.add(PermitProvider.METRIC_ADD);
+                names.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+            for (Map.Entry<String, Long> entry : pendingSets.entrySet()) {
+                ops.add(PermitProvider.METRIC_SET);
+                names.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+            for (int i = 0; i < pendingDurations.size(); i++) {
+                ops.add(PermitProvider.METRIC_DURATION);
+                names.add(pendingDurationNames.get(i));
+                values.add(pendingDurations.get(i));
+            }
+            pendingAdds.clear();
+            pendingSets.clear();
+            pendingDurationNames.clear();
+            pendingDurations.clear();
+        }
+        if (!ops.isEmpty()) {
+            remote.metrics(ops, names, values);
+        }
+    }
+
+    // Asks the system, not the main process, so it never starts it
+    private boolean isMainProcessRunning() {
+        ActivityManager manager = context.getSystemService(ActivityManager.class);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+            manager != null ? manager.getRunningAppProcesses() : null;
+        if (processes == null) return false;
+        for (ActivityManager.RunningAppProcessInfo process : processes) {
+            if (context.getPackageName().equals(process.processName)) return true;
+        }
+        return false;
+    }
+
+    public long get(String name) {
+        return prefs != null ? prefs.getLong(name, 0) : 0;
+    }
+
+    // One "name = value" line per metric, sorted by name
+    public String dump() {
+        if (prefs == null) return "";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ?> entry : new TreeMap<>(prefs.getAll()).entrySet()) {
+            sb.append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
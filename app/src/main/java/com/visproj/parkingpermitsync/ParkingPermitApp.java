@@ -0,0 +1,72 @@
+package com.visproj.parkingpermitsync;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+// Forwards memory trims to MemoryRegistry so every cache in the process releases
+// according to its own policy. Runs in both the main process and BleGattService's
+// ":ble" process.
+public class ParkingPermitApp extends Application {
+    private static final String TAG = "ParkingPermitApp";
+
+    public static final String BLE_PROCESS_SUFFIX = ":ble";
+
+    private static String processName;
+
+    // Only the main process may open PermitRepository; the BLE process goes through
+    // PermitProvider
+    public static boolean isBleProcess() {
+        return processName().endsWith(BLE_PROCESS_SUFFIX);
+    }
+
+    static synchronized String processName() {
+        if (processName == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                processName = Application.getProcessName();
+            } else {
+                processName = readCmdline();
+            }
+        }
+        return processName;
+    }
+
+    private static String readCmdline() {
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            byte[] buffer = new byte[256];
+            int length = in.read(buffer);
+            int end = 0;
+            while (end < Math.max(length, 0) && buffer[end] != 0) end++;
+            return new String(buffer, 0, end, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read process name", e);
+            return "";
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        long released = MemoryRegistry.getInstance().onTrimMemory(level);
+        Log.d(TAG, "Trim level " + level + ": released " + released + " bytes");
+
+        // In the ":ble" process these are only buffered: Metrics won't start the main
+        // process to record them, least of all under memory pressure
+        String prefix = isBleProcess() ? "memory.ble_trim." : "memory.trim.";
+        Metrics metrics = Metrics.getInstance(this);
+        metrics.increment(prefix + MemoryRegistry.Pressure.of(level).name().toLowerCase(Locale.US));
+        metrics.add(prefix + "released_bytes", released);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+}
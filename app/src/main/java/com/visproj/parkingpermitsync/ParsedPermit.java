@@ -0,0 +1,160 @@
+package com.visproj.parkingpermitsync;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+// Immutable typed view of a PermitData: validity bounds as epoch millis and the
+// price in cents. Built once when a permit enters the repository and cached with it,
+// so consumers compare numbers instead of re-parsing "Jan 07, 2026: 16:00" / "$48.38".
+// Fields that are present but can't be parsed are flagged in `problems`.
+public final class ParsedPermit {
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    public static final int PROBLEM_VALID_FROM = 1;
+    public static final int PROBLEM_VALID_TO = 1 << 1;
+    public static final int PROBLEM_PRICE = 1 << 2;
+
+    // "Jan 07, 2026: 16:00", with a date-only "Jan 07, 2026" fallback
+    private static final DateTimeFormatter DATE_TIME = new DateTimeFormatterBuilder()
+        .parseCaseInsensitive()
+        .appendPattern("MMM d, yyyy: H:mm")
+        .toFormatter(Locale.US);
+    private static final DateTimeFormatter DATE_ONLY = new DateTimeFormatterBuilder()
+        .parseCaseInsensitive()
+        .appendPattern("MMM d, yyyy")
+        .toFormatter(Locale.US);
+
+    public final PermitData permit;
+    public final long validFromMillis;
+    public final long validToMillis;
+    public final long priceCents;
+    public final int problems;
+
+    private ParsedPermit(PermitData permit, long validFromMillis, long validToMillis,
+                         long priceCents, int problems) {
+        this.permit = permit;
+        this.validFromMillis = validFromMillis;
+        this.validToMillis = validToMillis;
+        this.priceCents = priceCents;
+        this.problems = problems;
+    }
+
+    public static ParsedPermit of(PermitData permit) {
+        return of(permit, ZoneId.systemDefault());
+    }
+
+    public static ParsedPermit of(PermitData permit, ZoneId zone) {
+        int problems = 0;
+
+        long from = parseDate(permit.validFrom, zone);
+        if (from == UNKNOWN && !isBlank(permit.validFrom)) problems |= PROBLEM_VALID_FROM;
+
+        long to = parseDate(permit.validTo, zone);
+        if (to == UNKNOWN && !isBlank(permit.validTo)) problems |= PROBLEM_VALID_TO;
+
+        long cents = parseCents(permit.price);
+        if (cents == UNKNOWN && !isBlank(permit.price)) problems |= PROBLEM_PRICE;
+
+        return new ParsedPermit(permit, from, to, cents, problems);
+    }
+
+    public boolean hasValidity() {
+        return validFromMillis != UNKNOWN && validToMillis != UNKNOWN;
+    }
+
+    public boolean hasValidTo() {
+        return validToMillis != UNKNOWN;
+    }
+
+    public boolean hasPrice() {
+        return priceCents != UNKNOWN;
+    }
+
+    // Price difference against an earlier permit, or UNKNOWN if either price is missing
+    public long priceChangeCents(ParsedPermit earlier) {
+        if (earlier == null || !hasPrice() || !earlier.hasPrice()) return UNKNOWN;
+        return priceCents - earlier.priceCents;
+    }
+
+    // Rough heap footprint of this view and its PermitData, for MemoryRegistry
+    long estimatedBytes() {
+        return 96 + MemoryRegistry.estimate(permit.permitNumber, permit.plateNumber,
+            permit.vehicleName, permit.validFrom, permit.validTo, permit.barcodeValue,
+            permit.barcodeLabel, permit.price);
+    }
+
+    static long parseDate(String text, ZoneId zone) {
+        if (isBlank(text)) return UNKNOWN;
+        String trimmed = text.trim();
+        try {
+            return LocalDateTime.parse(trimmed, DATE_TIME).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            // fall through to date-only
+        }
+        try {
+            return LocalDate.parse(trimmed, DATE_ONLY).atStartOfDay(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return UNKNOWN;
+        }
+    }
+
+    // "$48.38" -> 4838. Fixed-point: digits before the point are dollars, the next two
+    // are cents, a third decides rounding. Anything else but '$', ',' and spaces is invalid.
+    static long parseCents(String text) {
+        if (isBlank(text)) return UNKNOWN;
+
+        long dollars = 0;
+        long cents = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        boolean roundUp = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                int digit = c - '0';
+                if (!seenPoint) {
+                    if (dollars > Long.MAX_VALUE / 1000) return UNKNOWN;
+                    dollars = dollars * 10 + digit;
+                } else if (fractionDigits < 2) {
+                    cents = cents * 10 + digit;
+                    fractionDigits++;
+                } else if (fractionDigits == 2) {
+                    roundUp = digit >= 5;
+                    fractionDigits++;
+                }
+            } else if (c == '.') {
+                if (seenPoint) return UNKNOWN;
+                seenPoint = true;
+            } else if (c != '$' && c != ',' && c != ' ') {
+                return UNKNOWN;
+            }
+        }
+
+        if (!seenDigit) return UNKNOWN;
+        if (fractionDigits == 1) cents *= 10;
+        return dollars * 100 + cents + (roundUp ? 1 : 0);
+    }
+
+    // 4838 -> "$48.38"
+    public static String formatCents(long cents) {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-$" : "$") + (abs / 100) + "." + (abs % 100 < 10 ? "0" : "") + (abs % 100);
+    }
+
+    // 240 -> "+$2.40", -240 -> "-$2.40"
+    public static String formatCentsChange(long cents) {
+        return (cents > 0 ? "+" : "") + formatCents(cents);
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+}
@@ -0,0 +1,115 @@
+package com.visproj.parkingpermitsync;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+// Compact binary form of the permit slots for broadcast mode, advertised as service data
+// under BROADCAST_UUID in an extended advertising set so a display can update from scans
+// alone. All numbers little-endian:
+//   byte  0      format (FORMAT)
+//   bytes 1-2    payload version, bumped whenever the content changes
+//   bytes 3-6    hash of the equivalent permit characteristic value (DisplayAck.hash),
+//                so the display can compare it with SyncBeacon and base deltas on it
+//   byte  7      slot count (1, or 2 with an upcoming permit; see PermitSlots)
+//   byte  8      flags: bit 0 = flipped, as in DisplaySettings. A display that only
+//                scans never reads the settings characteristic.
+//   per slot:
+//     bytes 0-3  validFrom, minutes since 2000-01-01 00:00 local time
+//     bytes 4-7  validTo, same
+//     bytes 8-11 price in cents, -1 if none
+//     then permitNumber, plateNumber, vehicleName, barcodeValue, barcodeLabel, each as
+//     a length byte and UTF-8
+//   last 4       CRC32 of everything before it
+// A display that announced DisplayCapabilities.FEATURE_BINARY gets the same bytes, with
+// version 0, from the permit characteristic instead of the JSON.
+// Only permits in the usual format fit: dates as "Jan 07, 2026: 16:00" and prices as
+// "$48.38", each of which the display rebuilds exactly. Anything else is not encoded
+// and the display reads the permit over a connection as before.
+public final class PermitBroadcast {
+    public static final byte FORMAT = 2;   // 1 had no flags byte
+
+    private static final int MAX_STRING = 255;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final DateTimeFormatter DATE_TIME =
+        DateTimeFormatter.ofPattern("MMM dd, yyyy: HH:mm", Locale.US);
+
+    private PermitBroadcast() {}
+
+    // Null if a slot isn't in the usual format
+    public static byte[] encode(PermitSlots slots, int version, int payloadHash, boolean flipped) {
+        return encode(slots, version, payloadHash, flipped, ZoneId.systemDefault());
+    }
+
+    static byte[] encode(PermitSlots slots, int version, int payloadHash, boolean flipped, ZoneId zone) {
+        if (slots.current == null) return null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(FORMAT);
+        writeShort(out, version);
+        writeInt(out, payloadHash);
+        out.write(slots.upcoming != null ? 2 : 1);
+        out.write(DisplaySettings.flags(flipped, false));
+        if (!writeSlot(out, slots.current, zone)) return null;
+        if (slots.upcoming != null && !writeSlot(out, slots.upcoming, zone)) return null;
+
+        CRC32 crc = new CRC32();
+        byte[] body = out.toByteArray();
+        crc.update(body, 0, body.length);
+        writeInt(out, (int) crc.getValue());
+        return out.toByteArray();
+    }
+
+    private static boolean writeSlot(ByteArrayOutputStream out, ParsedPermit slot, ZoneId zone) {
+        PermitData permit = slot.permit;
+        long from = minutes(slot.validFromMillis, permit.validFrom, zone);
+        long to = minutes(slot.validToMillis, permit.validTo, zone);
+        if (from < 0 || to < 0) return false;
+
+        long cents = -1;
+        if (permit.price != null && !permit.price.isEmpty()) {
+            // Only if "$48.38" is exactly what the display will print back
+            if (!slot.hasPrice() || !ParsedPermit.formatCents(slot.priceCents).equals(permit.price)) return false;
+            cents = slot.priceCents;
+        }
+        if (cents > Integer.MAX_VALUE) return false;
+
+        writeInt(out, (int) from);
+        writeInt(out, (int) to);
+        writeInt(out, (int) cents);
+        for (String text : new String[] {permit.permitNumber, permit.plateNumber,
+                                         permit.vehicleName, permit.barcodeValue, permit.barcodeLabel}) {
+            byte[] bytes = (text != null ? text : "").getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_STRING) return false;
+            out.write(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        return true;
+    }
+
+    // Minutes since EPOCH, or -1 if the text wouldn't survive the round trip
+    private static long minutes(long millis, String text, ZoneId zone) {
+        if (millis == ParsedPermit.UNKNOWN || text == null) return -1;
+        LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+        if (!DATE_TIME.format(local).equals(text.trim())) return -1;
+        long minutes = ChronoUnit.MINUTES.between(EPOCH, local);
+        return minutes >= 0 && minutes <= 0xFFFFFFFFL ? minutes : -1;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+}
@@ -0,0 +1,128 @@
+package com.visproj.parkingpermitsync;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+// Hand-written JSON codec for PermitData. Uses only Gson's streaming reader/writer,
+// no reflection, so R8 can shrink and rename the model freely. Output matches what
+// Gson produced from the old @SerializedName fields (same keys, same order, nulls
+// omitted) so stored prefs, the history log and the ESP32 all keep working.
+public final class PermitCodec {
+    static final String KEY_PERMIT_NUMBER = "permitNumber";
+    static final String KEY_PLATE_NUMBER = "plateNumber";
+    static final String KEY_VEHICLE_NAME = "vehicleName";
+    static final String KEY_VALID_FROM = "validFrom";
+    static final String KEY_VALID_TO = "validTo";
+    static final String KEY_BARCODE_VALUE = "barcodeValue";
+    static final String KEY_BARCODE_LABEL = "barcodeLabel";
+    static final String KEY_PRICE = "amountPaid";
+    static final String KEY_DISPLAY_FLIPPED = "displayFlipped";
+
+    private PermitCodec() {}
+
+    public static String encode(PermitData permit) {
+        StringWriter out = new StringWriter(256);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setHtmlSafe(true);  // Gson's default, keeps output byte-identical
+            write(writer, permit);
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    // Returns null for an empty or "null" document, throws on malformed JSON
+    public static PermitData decode(String json) throws IOException {
+        if (json == null) return null;
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.setLenient(true);
+            try {
+                if (reader.peek() == JsonToken.NULL) return null;
+            } catch (EOFException e) {
+                return null;
+            }
+            return read(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed permit JSON", e);
+        }
+    }
+
+    public static void write(JsonWriter writer, PermitData permit) throws IOException {
+        writer.beginObject();
+        writeFields(writer, permit);
+        writer.endObject();
+    }
+
+    // The permit's members without the enclosing object, for documents that add their own
+    static void writeFields(JsonWriter writer, PermitData permit) throws IOException {
+        writeString(writer, KEY_PERMIT_NUMBER, permit.permitNumber);
+        writeString(writer, KEY_PLATE_NUMBER, permit.plateNumber);
+        writeString(writer, KEY_VEHICLE_NAME, permit.vehicleName);
+        writeString(writer, KEY_VALID_FROM, permit.validFrom);
+        writeString(writer, KEY_VALID_TO, permit.validTo);
+        writeString(writer, KEY_BARCODE_VALUE, permit.barcodeValue);
+        writeString(writer, KEY_BARCODE_LABEL, permit.barcodeLabel);
+        writeString(writer, KEY_PRICE, permit.price);
+        writer.name(KEY_DISPLAY_FLIPPED).value(permit.displayFlipped);
+    }
+
+    public static PermitData read(JsonReader reader) throws IOException {
+        PermitData permit = new PermitData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case KEY_PERMIT_NUMBER: permit.permitNumber = readString(reader); break;
+                case KEY_PLATE_NUMBER: permit.plateNumber = readString(reader); break;
+                case KEY_VEHICLE_NAME: permit.vehicleName = readString(reader); break;
+                case KEY_VALID_FROM: permit.validFrom = readString(reader); break;
+                case KEY_VALID_TO: permit.validTo = readString(reader); break;
+                case KEY_BARCODE_VALUE: permit.barcodeValue = readString(reader); break;
+                case KEY_BARCODE_LABEL: permit.barcodeLabel = readString(reader); break;
+                case KEY_PRICE: permit.price = readString(reader); break;
+                case KEY_DISPLAY_FLIPPED: permit.displayFlipped = readBoolean(reader); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return permit;
+    }
+
+    private static void writeString(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+
+    // Like Gson's String adapter: numbers and booleans are accepted as text
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return false;
+            case STRING:
+                return Boolean.parseBoolean(reader.nextString());
+            default:
+                return reader.nextBoolean();
+        }
+    }
+}
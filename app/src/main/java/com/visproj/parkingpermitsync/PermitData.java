@@ -1,34 +1,15 @@
 package com.visproj.parkingpermitsync;
 
-import com.google.gson.Gson;
-import com.google.gson.annotations.SerializedName;
-
+// JSON mapping lives in PermitCodec (no reflection), e.g. price <-> "amountPaid"
 public class PermitData {
-    @SerializedName("permitNumber")
     public String permitNumber = "";
-
-    @SerializedName("plateNumber")
     public String plateNumber = "";
-
-    @SerializedName("vehicleName")
     public String vehicleName = "";
-
-    @SerializedName("validFrom")
     public String validFrom = "";
-
-    @SerializedName("validTo")
     public String validTo = "";
-
-    @SerializedName("barcodeValue")
     public String barcodeValue = "";
-
-    @SerializedName("barcodeLabel")
     public String barcodeLabel = "";
-
-    @SerializedName("amountPaid")
     public String price = "";
-
-    @SerializedName("displayFlipped")
     public boolean displayFlipped = false;
 
     public PermitData() {}
@@ -57,7 +38,17 @@ public class PermitData {
             && barcodeLabel != null && !barcodeLabel.isEmpty();
     }
 
+    // Copy with displayFlipped set, so shared (cached) instances are never modified
+    public PermitData withDisplayFlipped(boolean flipped) {
+        PermitData copy = new PermitData(permitNumber, plateNumber, validFrom,
+            validTo, barcodeValue, barcodeLabel);
+        copy.vehicleName = vehicleName;
+        copy.price = price;
+        copy.displayFlipped = flipped;
+        return copy;
+    }
+
     public String toJson() {
-        return new Gson().toJson(this);
+        return PermitCodec.encode(this);
     }
 }
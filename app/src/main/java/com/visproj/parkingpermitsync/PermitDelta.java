@@ -0,0 +1,106 @@
+package com.visproj.parkingpermitsync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Value of BleGattService's delta characteristic: the top-level members that differ
+// between the permit payload the display already has (its base) and the current one.
+// Week to week that is usually the dates, barcode and price; plate and vehicle stay.
+//   {"base":<base hash>, "hash":<target hash>, "set":{<member>:<new value>, ...},
+//    "remove":[<member>, ...]}
+// Hashes are the payloads' CRC32 (DisplayAck.hash) as unsigned numbers. A changed
+// nested object (e.g. "upcoming") is sent whole. The display applies the delta to its
+// base and acks with "hash", since its own re-serialization needn't match byte for byte.
+public final class PermitDelta {
+    static final String KEY_BASE = "base";
+    static final String KEY_HASH = "hash";
+    static final String KEY_SET = "set";
+    static final String KEY_REMOVE = "remove";
+
+    private PermitDelta() {}
+
+    // Null if either payload isn't a JSON object
+    public static byte[] encode(byte[] base, int baseHash, byte[] target, int targetHash) {
+        JsonObject from = parse(base);
+        JsonObject to = parse(target);
+        if (from == null || to == null) return null;
+
+        JsonObject set = new JsonObject();
+        for (Map.Entry<String, JsonElement> member : to.entrySet()) {
+            if (!member.getValue().equals(from.get(member.getKey()))) {
+                set.add(member.getKey(), member.getValue());
+            }
+        }
+        JsonArray remove = new JsonArray();
+        for (String key : from.keySet()) {
+            if (!to.has(key)) {
+                remove.add(key);
+            }
+        }
+
+        StringWriter out = new StringWriter(128);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setHtmlSafe(true);  // same escaping as PermitCodec
+            writer.beginObject();
+            writer.name(KEY_BASE).value(baseHash & 0xFFFFFFFFL);
+            writer.name(KEY_HASH).value(targetHash & 0xFFFFFFFFL);
+            writer.name(KEY_SET);
+            write(writer, set);
+            writer.name(KEY_REMOVE);
+            write(writer, remove);
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static JsonObject parse(byte[] payload) {
+        try {
+            JsonElement element = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8));
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    // Tree back to text with the streaming writer, no Gson instance or binding needed
+    private static void write(JsonWriter writer, JsonElement element) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            writer.nullValue();
+        } else if (element.isJsonObject()) {
+            writer.beginObject();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                writer.name(member.getKey());
+                write(writer, member.getValue());
+            }
+            writer.endObject();
+        } else if (element.isJsonArray()) {
+            writer.beginArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                write(writer, item);
+            }
+            writer.endArray();
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                writer.value(primitive.getAsBoolean());
+            } else if (primitive.isNumber()) {
+                writer.value(primitive.getAsNumber());
+            } else {
+                writer.value(primitive.getAsString());
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.visproj.parkingpermitsync;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+// Display text for a permit's validity: the date range, the status badge and the
+// estimated next permit. Uses immutable java.time formatters and memoizes the
+// per-permit work, so it is cheap to call on every refresh and safe from any thread.
+public final class PermitFormatter {
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+    private static final int CACHE_SIZE = 16;
+
+    private static final DateTimeFormatter MONTH_DAY = DateTimeFormatter.ofPattern("MMM d", Locale.US);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("d", Locale.US);
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yyyy", Locale.US);
+    private static final DateTimeFormatter ESTIMATE_DAY = DateTimeFormatter.ofPattern("MMM dd, yyyy", Locale.US);
+
+    public enum Badge {
+        CURRENT("Current", R.drawable.badge_green),
+        EXPIRING("Expiring", R.drawable.badge_orange),
+        EXPIRING_TODAY("Expiring Today", R.drawable.badge_red),
+        EXPIRED("Expired", R.drawable.badge_red);
+
+        public final String label;
+        public final int background;
+
+        Badge(String label, int background) {
+            this.label = label;
+            this.background = background;
+        }
+    }
+
+    // Everything derived from one permit's validity, computed once per content hash
+    private static final class Entry {
+        final String validFrom;
+        final String validTo;
+        final ZoneId zone;
+
+        final String range;
+        final String estimateRange;     // null without a parsed validTo
+        final long expiringAt;          // badge turns EXPIRING after this
+        final long expiringTodayAt;     // start of validTo's local day
+        final long estimateAt;          // next-permit estimate shown after this
+
+        Entry(ParsedPermit parsed, ZoneId zone) {
+            this.validFrom = parsed.permit.validFrom;
+            this.validTo = parsed.permit.validTo;
+            this.zone = zone;
+            this.range = buildRange(parsed, zone);
+
+            if (parsed.hasValidTo()) {
+                ZonedDateTime to = Instant.ofEpochMilli(parsed.validToMillis).atZone(zone);
+                ZonedDateTime nextStart = to.plusDays(1);
+                this.estimateRange = ESTIMATE_DAY.format(nextStart) + " - " + ESTIMATE_DAY.format(nextStart.plusDays(6));
+                this.expiringAt = parsed.validToMillis - 2 * DAY_MS;
+                this.expiringTodayAt = to.toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+                this.estimateAt = parsed.validToMillis - 3 * DAY_MS;
+            } else {
+                this.estimateRange = null;
+                this.expiringAt = Long.MAX_VALUE;
+                this.expiringTodayAt = Long.MAX_VALUE;
+                this.estimateAt = Long.MAX_VALUE;
+            }
+        }
+
+        long estimatedBytes() {
+            return 64 + MemoryRegistry.estimate(validFrom, validTo, range, estimateRange);
+        }
+
+        boolean matches(ParsedPermit parsed, ZoneId zone) {
+            return Objects.equals(validFrom, parsed.permit.validFrom)
+                && Objects.equals(validTo, parsed.permit.validTo)
+                && this.zone.equals(zone);
+        }
+    }
+
+    // LRU keyed by content hash; an entry is only used if its fields actually match
+    private static final Map<Integer, Entry> cache = new LinkedHashMap<Integer, Entry>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // Entries are rebuilt on demand, so the whole LRU goes once memory is low
+    private static final MemoryRegistry.Trimmable memory = new MemoryRegistry.Trimmable() {
+        @Override
+        public long bytesHeld() {
+            long bytes = 0;
+            synchronized (cache) {
+                for (Entry entry : cache.values()) {
+                    bytes += entry.estimatedBytes();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        public void shrink() {
+        }
+
+        @Override
+        public void clear() {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+    };
+
+    static {
+        MemoryRegistry.getInstance().register("permit_formatter", memory,
+            null, MemoryRegistry.Pressure.LOW);
+    }
+
+    private PermitFormatter() {}
+
+    // "Jan 7 - 14, 2026", "Dec 30 - Jan 6, 2026" or "Dec 30, 2025 - Jan 6, 2026"
+    public static String formatRange(ParsedPermit parsed) {
+        return entry(parsed, ZoneId.systemDefault()).range;
+    }
+
+    public static Badge badge(ParsedPermit parsed, long now) {
+        return badge(parsed, now, ZoneId.systemDefault());
+    }
+
+    static Badge badge(ParsedPermit parsed, long now, ZoneId zone) {
+        if (!parsed.hasValidTo()) return Badge.CURRENT;
+        Entry entry = entry(parsed, zone);
+        if (now > parsed.validToMillis) return Badge.EXPIRED;
+        if (now >= entry.expiringTodayAt) return Badge.EXPIRING_TODAY;
+        if (now > entry.expiringAt) return Badge.EXPIRING;
+        return Badge.CURRENT;
+    }
+
+    // Dates of the permit expected to follow this one, or null if it isn't due yet
+    public static String estimateNextRange(ParsedPermit parsed, long now) {
+        Entry entry = entry(parsed, ZoneId.systemDefault());
+        return now > entry.estimateAt ? entry.estimateRange : null;
+    }
+
+    // First instant after `now` at which badge() or estimateNextRange() changes,
+    // or Long.MAX_VALUE if neither will change again
+    static long nextChangeAfter(ParsedPermit parsed, long now) {
+        if (!parsed.hasValidTo()) return Long.MAX_VALUE;
+        Entry entry = entry(parsed, ZoneId.systemDefault());
+        long next = Long.MAX_VALUE;
+        // Comparisons above are strict except for the start of the expiry day
+        for (long at : new long[] {entry.expiringAt + 1, entry.expiringTodayAt,
+                                   parsed.validToMillis + 1, entry.estimateAt + 1}) {
+            if (at > now && at < next) next = at;
+        }
+        return next;
+    }
+
+    static String formatRange(ParsedPermit parsed, ZoneId zone) {
+        return entry(parsed, zone).range;
+    }
+
+    private static Entry entry(ParsedPermit parsed, ZoneId zone) {
+        int key = Objects.hash(parsed.permit.validFrom, parsed.permit.validTo, zone);
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && entry.matches(parsed, zone)) return entry;
+        }
+        // Build outside the lock; racing threads produce identical entries
+        Entry entry = new Entry(parsed, zone);
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static String buildRange(ParsedPermit parsed, ZoneId zone) {
+        if (!parsed.hasValidity()) {
+            // Unparseable (flagged at ingest): raw text with the ": HH:mm" suffix dropped
+            return stripTime(parsed.permit.validFrom) + " - " + stripTime(parsed.permit.validTo);
+        }
+
+        ZonedDateTime from = Instant.ofEpochMilli(parsed.validFromMillis).atZone(zone);
+        ZonedDateTime to = Instant.ofEpochMilli(parsed.validToMillis).atZone(zone);
+
+        if (from.getYear() != to.getYear()) {
+            return MONTH_DAY.format(from) + ", " + YEAR.format(from) + " - " +
+                   MONTH_DAY.format(to) + ", " + YEAR.format(to);
+        }
+        if (from.getMonth() != to.getMonth()) {
+            return MONTH_DAY.format(from) + " - " + MONTH_DAY.format(to) + ", " + YEAR.format(to);
+        }
+        return MONTH_DAY.format(from) + " - " + DAY.format(to) + ", " + YEAR.format(to);
+    }
+
+    private static String stripTime(String text) {
+        if (text == null) return "";
+        return text.contains(":") ? text.substring(0, text.lastIndexOf(":")).trim() : text;
+    }
+}
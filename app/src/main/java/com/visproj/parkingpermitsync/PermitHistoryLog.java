@@ -0,0 +1,378 @@
+package com.visproj.parkingpermitsync;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+// Append-only log of every distinct permit we have fetched or put on the display.
+// Kept out of SharedPreferences so history can grow without slowing the prefs XML
+// parse at startup.
+//
+// Record layout (big-endian):
+//   int  length     - bytes that follow this field
+//   long recordedAt - epoch millis
+//   byte source     - SOURCE_FETCHED / SOURCE_DISPLAYED
+//   byte[] payload  - permit JSON, UTF-8
+//
+// Reads go through a read-only memory map plus an in-memory offset index, so the
+// newest N entries are O(1) each. Appends are written on a background thread; a read
+// writes any still queued first, so it always sees them.
+public class PermitHistoryLog {
+    private static final String TAG = "PermitHistoryLog";
+    private static final String FILE_NAME = "permit_history.log";
+
+    public static final byte SOURCE_FETCHED = 1;
+    public static final byte SOURCE_DISPLAYED = 2;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_META_SIZE = 8 + 1;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    // Compaction: once we pass MAX_ENTRIES or MAX_BYTES (each + slack, so we don't
+    // rewrite on every append), rewrite the file keeping the newest MAX_ENTRIES, fewer
+    // if those would still be over MAX_BYTES.
+    static final int MAX_ENTRIES = 260;  // ~5 years of weekly permits
+    static final int COMPACT_SLACK = 52;
+    static final long MAX_BYTES = 512 * 1024;
+    static final long COMPACT_SLACK_BYTES = 64 * 1024;
+
+    // Decoded entries kept under moderate memory pressure: enough for price lookups
+    private static final int KEEP_DECODED = 16;
+
+    public static class Entry {
+        public final long recordedAt;
+        public final byte source;
+        public final ParsedPermit permit;
+
+        Entry(long recordedAt, byte source, ParsedPermit permit) {
+            this.recordedAt = recordedAt;
+            this.source = source;
+            this.permit = permit;
+        }
+    }
+
+    private static final class PendingAppend {
+        final PermitData permit;
+        final byte source;
+        final long recordedAt;
+
+        PendingAppend(PermitData permit, byte source, long recordedAt) {
+            this.permit = permit;
+            this.source = source;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    private final File file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // Queued without taking the lock, so append() never waits on a reader's disk I/O
+    private final ConcurrentLinkedQueue<PendingAppend> pending = new ConcurrentLinkedQueue<>();
+
+    private int[] offsets = new int[16];
+    // Decoded entries, parallel to offsets and filled on first read
+    private Entry[] decoded = new Entry[16];
+    private int count = 0;
+    private long fileLength = 0;
+    private final Set<Long> seen = new HashSet<>();  // payloadKey of every record
+    private MappedByteBuffer map;
+    private boolean loaded = false;
+
+    // Decoded entries are read back from the file on demand, so they can always go;
+    // the offset index and dedupe set stay since rebuilding them walks the whole file
+    private final MemoryRegistry.Trimmable memory = new MemoryRegistry.Trimmable() {
+        @Override
+        public long bytesHeld() {
+            return decodedBytes();
+        }
+
+        @Override
+        public void shrink() {
+            releaseDecoded(KEEP_DECODED);
+        }
+
+        @Override
+        public void clear() {
+            releaseDecoded(0);
+        }
+    };
+
+    public PermitHistoryLog(File dir) {
+        this.file = new File(dir, FILE_NAME);
+        MemoryRegistry.getInstance().register("permit_history", memory,
+            MemoryRegistry.Pressure.MODERATE, MemoryRegistry.Pressure.LOW);
+    }
+
+    // Queue an append; duplicates of a permit already in the log are dropped
+    public void append(PermitData permit, byte source) {
+        if (permit == null || !permit.isValid()) return;
+        long recordedAt = System.currentTimeMillis();
+        // The flip flag is a display setting, not part of the permit's identity
+        PermitData normalized = permit.withDisplayFlipped(false);
+        pending.add(new PendingAppend(normalized, source, recordedAt));
+        writer.execute(this::ready);
+    }
+
+    // Loaded, with every queued append written
+    private synchronized void ready() {
+        ensureLoaded();
+        PendingAppend next;
+        while ((next = pending.poll()) != null) {
+            appendNow(next.permit, next.source, next.recordedAt);
+        }
+    }
+
+    private void appendNow(PermitData permit, byte source, long recordedAt) {
+        byte[] payload = PermitCodec.encode(permit).getBytes(StandardCharsets.UTF_8);
+        long key = payloadKey(ByteBuffer.wrap(payload));
+        if (seen.contains(key)) return;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + RECORD_META_SIZE + payload.length);
+        record.putInt(RECORD_META_SIZE + payload.length)
+            .putLong(recordedAt)
+            .put(source)
+            .put(payload)
+            .flip();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            channel.position(fileLength);
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Append failed", e);
+            return;
+        }
+
+        addOffset((int) fileLength);
+        fileLength += HEADER_SIZE + RECORD_META_SIZE + payload.length;
+        seen.add(key);
+        map = null;  // remapped on next read
+        Log.d(TAG, "Appended " + permit.permitNumber + " (" + count + " entries)");
+
+        if (count > MAX_ENTRIES + COMPACT_SLACK || fileLength > MAX_BYTES + COMPACT_SLACK_BYTES) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        ready();
+        return count;
+    }
+
+    // index 0 is the newest entry
+    public synchronized Entry getLatest(int index) {
+        ready();
+        if (index < 0 || index >= count) return null;
+        return entryAt(count - 1 - index);
+    }
+
+    // Newest first, at most n permits
+    public List<ParsedPermit> latest(int n) {
+        return latest(0, n);
+    }
+
+    // Newest first, at most n permits after skipping the newest `offset`
+    public synchronized List<ParsedPermit> latest(int offset, int n) {
+        ready();
+        List<ParsedPermit> result = new ArrayList<>(Math.max(0, Math.min(n, count - offset)));
+        for (int i = offset; i < offset + n && i < count; i++) {
+            Entry entry = entryAt(count - 1 - i);
+            if (entry != null) {
+                result.add(entry.permit);
+            }
+        }
+        return result;
+    }
+
+    private synchronized long decodedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            if (decoded[i] != null) {
+                bytes += 32 + decoded[i].permit.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    // Forget all but the newest `keep` decoded entries; with none kept the map goes too
+    private synchronized void releaseDecoded(int keep) {
+        for (int i = 0; i < count - keep; i++) {
+            decoded[i] = null;
+        }
+        if (keep == 0) {
+            map = null;
+        }
+    }
+
+    private Entry entryAt(int slot) {
+        if (decoded[slot] == null) {
+            decoded[slot] = readEntry(offsets[slot]);
+        }
+        return decoded[slot];
+    }
+
+    private Entry readEntry(int offset) {
+        MappedByteBuffer buffer = mapped();
+        if (buffer == null) return null;
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        int length = view.getInt();
+        long recordedAt = view.getLong();
+        byte source = view.get();
+        byte[] payload = new byte[length - RECORD_META_SIZE];
+        view.get(payload);
+
+        try {
+            PermitData permit = PermitCodec.decode(new String(payload, StandardCharsets.UTF_8));
+            return permit != null ? new Entry(recordedAt, source, ParsedPermit.of(permit)) : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable entry at " + offset);
+            return null;
+        }
+    }
+
+    private MappedByteBuffer mapped() {
+        if (map == null && fileLength > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            } catch (IOException e) {
+                Log.e(TAG, "Map failed", e);
+            }
+        }
+        return map;
+    }
+
+    // Build the offset index (and dedupe set) by walking the file once
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+
+        fileLength = file.length();
+        MappedByteBuffer buffer = mapped();
+        if (buffer == null) return;
+
+        int position = 0;
+        while (position + HEADER_SIZE + RECORD_META_SIZE <= fileLength) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_META_SIZE || length > MAX_RECORD_SIZE
+                || position + HEADER_SIZE + length > fileLength) {
+                break;
+            }
+            addOffset(position);
+            // Dedupe on the raw bytes; entries are decoded only when read
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(position + HEADER_SIZE + RECORD_META_SIZE);
+            payload.limit(position + HEADER_SIZE + length);
+            seen.add(payloadKey(payload));
+            position += HEADER_SIZE + length;
+        }
+
+        // Drop a torn record left by a crash mid-append
+        if (position < fileLength) {
+            Log.w(TAG, "Truncating " + (fileLength - position) + " trailing bytes");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(position);
+            } catch (IOException e) {
+                Log.e(TAG, "Truncate failed", e);
+            }
+            fileLength = position;
+            map = null;
+        }
+    }
+
+    // Identity of a record's payload: CRC32 and the array hash side by side, so two
+    // different permits would have to collide on both to be mistaken for each other.
+    // The payload is the permit's JSON, permit number included.
+    static long payloadKey(ByteBuffer payload) {
+        int hash = 1;
+        for (int i = payload.position(); i < payload.limit(); i++) {
+            hash = 31 * hash + payload.get(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ((long) hash << 32) | crc.getValue();
+    }
+
+    private void compact() {
+        int keep = Math.min(count, MAX_ENTRIES);
+        // A record is at most MAX_RECORD_SIZE, so the newest one always fits
+        while (keep > 1 && fileLength - offsets[count - keep] > MAX_BYTES) {
+            keep--;
+        }
+        MappedByteBuffer buffer = mapped();
+        if (buffer == null) return;
+
+        int start = offsets[count - keep];
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            ByteBuffer tail = buffer.duplicate();
+            tail.position(start);
+            tail.limit((int) fileLength);
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (tail.hasRemaining()) {
+                channel.write(tail);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            Log.e(TAG, "Compaction failed", e);
+            tmp.delete();
+            return;
+        }
+
+        // Dropped permits may be fetched again (e.g. a reissue) and must not be deduped
+        Set<Long> kept = new HashSet<>();
+        for (int i = count - keep; i < count; i++) {
+            int length = buffer.getInt(offsets[i]);
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(offsets[i] + HEADER_SIZE + RECORD_META_SIZE);
+            payload.limit(offsets[i] + HEADER_SIZE + length);
+            kept.add(payloadKey(payload));
+        }
+
+        map = null;
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Compaction rename failed");
+            tmp.delete();
+            return;
+        }
+        seen.clear();
+        seen.addAll(kept);
+
+        int dropped = count - keep;
+        offsets = Arrays.copyOfRange(offsets, dropped, Math.max(count, 16));
+        decoded = Arrays.copyOfRange(decoded, dropped, Math.max(count, 16));
+        count = keep;
+        for (int i = 0; i < count; i++) {
+            offsets[i] -= start;
+        }
+        fileLength -= start;
+        Log.d(TAG, "Compacted: dropped " + dropped + " entries, " + fileLength + " bytes left");
+    }
+
+    private void addOffset(int offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            decoded = Arrays.copyOf(decoded, count * 2);
+        }
+        offsets[count++] = offset;
+    }
+}
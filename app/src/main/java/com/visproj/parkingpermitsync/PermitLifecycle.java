@@ -0,0 +1,210 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+// Where the permits are in their lifecycle: which permit is current, its badge, the
+// newer permit waiting for the display (or the estimated next one) and how many days
+// the display is behind. Rebuilt from the repository only when a permit changes; in
+// between, subscribers are notified exactly at the next transition instant instead of
+// everyone re-checking dates on a timer.
+public class PermitLifecycle {
+    private static final String TAG = "PermitLifecycle";
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private static PermitLifecycle instance;
+
+    public interface Listener {
+        void onLifecycleChanged(Snapshot snapshot);
+    }
+
+    // Immutable state at one instant
+    public static final class Snapshot {
+        public final ParsedPermit current;        // what the display shows (or should), null if none
+        public final ParsedPermit scheduled;      // newer fetched permit not yet on the display
+        public final PermitFormatter.Badge badge;
+        public final String estimateRange;        // estimated next permit dates, null if not due
+        public final long daysBehind;             // -1 while the display is in sync
+        public final long validUntil;             // next transition instant
+
+        Snapshot(ParsedPermit current, ParsedPermit scheduled, PermitFormatter.Badge badge,
+                 String estimateRange, long daysBehind, long validUntil) {
+            this.current = current;
+            this.scheduled = scheduled;
+            this.badge = badge;
+            this.estimateRange = estimateRange;
+            this.daysBehind = daysBehind;
+            this.validUntil = validUntil;
+        }
+    }
+
+    // Everything read from the repository for one set of permits
+    private static final class Timeline {
+        final ParsedPermit current;
+        final ParsedPermit scheduled;
+        final boolean hasDisplayPermit;
+        final boolean outOfSync;
+        final long detectedAt;
+
+        Timeline(PermitRepository repository) {
+            ParsedPermit fetched = repository.getParsedPermit();
+            ParsedPermit display = repository.getParsedDisplayPermit();
+            outOfSync = repository.isDisplayOutOfSync();
+            hasDisplayPermit = display != null;
+            detectedAt = repository.getNewPermitDetectedTime();
+
+            // While out of sync the display still shows the old permit, so that's current
+            if (outOfSync && display != null && display.permit.isValid()) {
+                current = display;
+            } else if (fetched != null && fetched.permit.isValid()) {
+                current = fetched;
+            } else {
+                current = null;
+            }
+
+            if (current != null && fetched != null && fetched.permit.isValid()
+                && !fetched.permit.permitNumber.equals(current.permit.permitNumber)) {
+                scheduled = fetched;
+            } else {
+                scheduled = null;
+            }
+        }
+
+        Snapshot at(long now) {
+            PermitFormatter.Badge badge = PermitFormatter.Badge.CURRENT;
+            String estimate = null;
+            long next = Long.MAX_VALUE;
+
+            if (current != null) {
+                badge = PermitFormatter.badge(current, now);
+                next = PermitFormatter.nextChangeAfter(current, now);
+                // The estimate only stands in when there's no real newer permit, and is
+                // skipped before the first display sync (current is the fetched one then)
+                if (scheduled == null && hasDisplayPermit) {
+                    estimate = PermitFormatter.estimateNextRange(current, now);
+                }
+            }
+
+            long daysBehind = -1;
+            if (outOfSync) {
+                daysBehind = 0;
+                if (detectedAt > 0 && now > detectedAt) {
+                    daysBehind = (now - detectedAt) / DAY_MS;
+                    next = Math.min(next, detectedAt + (daysBehind + 1) * DAY_MS);
+                }
+            }
+
+            return new Snapshot(current, scheduled, badge, estimate, daysBehind, next);
+        }
+    }
+
+    private static final class Registration {
+        final Listener listener;
+        final Executor executor;
+
+        Registration(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private final PermitRepository repository;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Registration> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable transitionRunnable = this::onTransition;
+
+    private Timeline timeline;
+    private Snapshot snapshot;
+
+    public static synchronized PermitLifecycle getInstance(Context context) {
+        if (instance == null) {
+            instance = new PermitLifecycle(PermitRepository.getInstance(context));
+        }
+        return instance;
+    }
+
+    private PermitLifecycle(PermitRepository repository) {
+        this.repository = repository;
+        repository.addListener(change -> {
+            if (change != PermitRepository.Change.SETTINGS
+                && change != PermitRepository.Change.SYNC_FAILURES) {
+                rebuild();
+            }
+        }, Runnable::run);
+    }
+
+    // Current state; cheap, no date parsing unless the permits changed
+    public synchronized Snapshot snapshot() {
+        long now = System.currentTimeMillis();
+        if (timeline == null) {
+            timeline = new Timeline(repository);
+        }
+        if (snapshot == null || now >= snapshot.validUntil) {
+            snapshot = timeline.at(now);
+        }
+        return snapshot;
+    }
+
+    // Listener gets the current snapshot right away, then one call per transition
+    public void addListener(Listener listener, Executor executor) {
+        Registration registration = new Registration(listener, executor);
+        listeners.add(registration);
+        Snapshot current = snapshot();
+        executor.execute(() -> listener.onLifecycleChanged(current));
+        scheduleNext(current);
+    }
+
+    public void removeListener(Listener listener) {
+        for (Registration registration : listeners) {
+            if (registration.listener == listener) {
+                listeners.remove(registration);
+            }
+        }
+        if (listeners.isEmpty()) {
+            handler.removeCallbacks(transitionRunnable);
+        }
+    }
+
+    private void rebuild() {
+        Snapshot current;
+        synchronized (this) {
+            timeline = new Timeline(repository);
+            snapshot = timeline.at(System.currentTimeMillis());
+            current = snapshot;
+        }
+        Log.d(TAG, "Timeline rebuilt: badge=" + current.badge + ", daysBehind=" + current.daysBehind
+            + ", next in " + delayUntil(current.validUntil) + " ms");
+        publish(current);
+    }
+
+    private void onTransition() {
+        Snapshot current = snapshot();
+        Log.d(TAG, "Transition: badge=" + current.badge + ", daysBehind=" + current.daysBehind);
+        publish(current);
+    }
+
+    private void publish(Snapshot current) {
+        for (Registration registration : listeners) {
+            registration.executor.execute(() -> registration.listener.onLifecycleChanged(current));
+        }
+        scheduleNext(current);
+    }
+
+    // Only keep a timer while someone is listening; receivers just call snapshot()
+    private void scheduleNext(Snapshot current) {
+        handler.removeCallbacks(transitionRunnable);
+        if (listeners.isEmpty() || current.validUntil == Long.MAX_VALUE) return;
+        handler.postDelayed(transitionRunnable, delayUntil(current.validUntil));
+    }
+
+    private static long delayUntil(long at) {
+        if (at == Long.MAX_VALUE) return Long.MAX_VALUE;
+        return Math.max(0, at - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,246 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+// Permit store access for BleGattService, which runs in its own ":ble" process.
+// SharedPreferences and the history log are only safe with a single writer, so the
+// main process owns PermitRepository and the BLE process goes through call() here
+// (see PermitStoreClient). PermitRepository announces changes with
+// notifyChange(PERMIT_URI) so the BLE process can drop its cached copy.
+//
+// The service also reports its status here; it is published on BleEvents for the UI.
+public class PermitProvider extends ContentProvider {
+    private static final String TAG = "PermitProvider";
+
+    public static final String AUTHORITY = "com.visproj.parkingpermitsync.permits";
+    public static final Uri PERMIT_URI = Uri.parse("content://" + AUTHORITY + "/permit");
+
+    static final String METHOD_GET_STATE = "get_state";
+    static final String METHOD_GET_PERMIT_BEFORE = "get_permit_before";
+    static final String METHOD_DISPLAY_ACK = "display_ack";
+    static final String METHOD_DISPLAY_CAPABILITIES = "display_capabilities";
+    static final String METHOD_BLE_EVENT = "ble_event";
+    static final String METHOD_METRIC = "metric";
+
+    static final String KEY_PERMIT = "permit";
+    static final String KEY_PREVIOUS_PERMIT = "previous_permit";
+    static final String KEY_DISPLAY_PERMIT = "display_permit";
+    static final String KEY_DISPLAY_FLIPPED = "display_flipped";
+    static final String KEY_SETTINGS_VERSION = "settings_version";
+    static final String KEY_DISPLAY_PERMIT_NUMBER = "display_permit_number";
+    static final String KEY_BROADCAST_MODE = "broadcast_mode";
+    static final String KEY_PERSISTENT_LINK = "persistent_link";
+    static final String KEY_PERMIT_FETCHED_TIME = "permit_fetched_time";
+    static final String KEY_IS_NEW_PERMIT = "is_new_permit";
+    static final String KEY_BATTERY = "battery";
+    static final String KEY_FIRMWARE = "firmware";
+    static final String KEY_RENDER_MS = "render_ms";
+    static final String KEY_PROTOCOL = "protocol";
+    static final String KEY_FEATURES = "features";
+    static final String KEY_TOKEN = "token";
+    static final String KEY_OPS = "ops";
+    static final String KEY_NAMES = "names";
+    static final String KEY_VALUES = "values";
+
+    static final String METRIC_ADD = "add";
+    static final String METRIC_SET = "set";
+    static final String METRIC_DURATION = "duration";
+
+    // Identifies the live BLE process; its state is reset if that process dies
+    private static IBinder bleToken;
+
+    private static final IBinder.DeathRecipient bleDeath = () -> {
+        Log.w(TAG, "BLE process died");
+        BleEvents.STATE.publish(BleEvents.State.STOPPED);
+    };
+
+    @Override
+    public boolean onCreate() {
+        // The repository is opened on first call, not at process start
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        PermitRepository repository = PermitRepository.getInstance(getContext());
+        switch (method) {
+            case METHOD_GET_STATE: {
+                Bundle result = new Bundle();
+                PermitData permit = repository.getPermit();
+                if (permit != null) {
+                    result.putString(KEY_PERMIT, PermitCodec.encode(permit));
+                }
+                PermitData previous = repository.getPreviousPermit();
+                if (previous != null) {
+                    result.putString(KEY_PREVIOUS_PERMIT, PermitCodec.encode(previous));
+                }
+                PermitData display = repository.getDisplayPermit();
+                if (display != null) {
+                    result.putString(KEY_DISPLAY_PERMIT, PermitCodec.encode(display));
+                }
+                result.putBoolean(KEY_DISPLAY_FLIPPED, repository.isDisplayFlipped());
+                result.putInt(KEY_SETTINGS_VERSION, repository.getDisplaySettingsVersion());
+                result.putString(KEY_DISPLAY_PERMIT_NUMBER, repository.getDisplayPermitNumber());
+                result.putBoolean(KEY_BROADCAST_MODE, repository.isBroadcastModeEnabled());
+                result.putBoolean(KEY_PERSISTENT_LINK, repository.isPersistentLinkEnabled());
+                result.putLong(KEY_PERMIT_FETCHED_TIME, repository.getPermitFetchedTime());
+                return result;
+            }
+            case METHOD_GET_PERMIT_BEFORE: {
+                PermitData permit = decode(arg);
+                ParsedPermit before = permit != null ? repository.getPermitBefore(permit) : null;
+                Bundle result = new Bundle();
+                if (before != null) {
+                    result.putString(KEY_PERMIT, PermitCodec.encode(before.permit));
+                }
+                return result;
+            }
+            case METHOD_DISPLAY_ACK: {
+                PermitData permit = decode(arg);
+                if (permit != null && extras != null) {
+                    int battery = extras.getInt(KEY_BATTERY, DisplayAck.BATTERY_UNKNOWN);
+                    PermitRepository.Transaction edit = repository.edit().setDisplayPermit(permit);
+                    // No status from a display without acks; keep what was last reported
+                    if (extras.containsKey(KEY_BATTERY)) {
+                        edit.setDisplayStatus(battery, extras.getString(KEY_FIRMWARE));
+                    }
+                    edit.commit();
+                    BleEvents.DISPLAY_ACKED.publish(new BleEvents.DisplayAcked(permit.permitNumber,
+                        extras.getBoolean(KEY_IS_NEW_PERMIT), battery, extras.getLong(KEY_RENDER_MS)));
+                }
+                return null;
+            }
+            case METHOD_DISPLAY_CAPABILITIES:
+                if (extras != null) {
+                    repository.setDisplayCapabilities(new DisplayCapabilities(
+                        extras.getInt(KEY_PROTOCOL), extras.getInt(KEY_FEATURES), ""));
+                }
+                return null;
+            case METHOD_BLE_EVENT:
+                onBleEvent(arg, extras);
+                return null;
+            case METHOD_METRIC:
+                onMetrics(extras);
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
+        }
+    }
+
+    private static void onBleEvent(String action, Bundle extras) {
+        if (action == null) return;
+        switch (action) {
+            case BleGattService.ACTION_SERVICE_RUNNING:
+                watchBleProcess(extras != null ? extras.getBinder(KEY_TOKEN) : null);
+                BleEvents.STATE.update(state -> state.withServiceRunning(true));
+                break;
+            case BleGattService.ACTION_SERVICE_STOPPED:
+                BleEvents.STATE.publish(BleEvents.State.STOPPED);
+                break;
+            case BleGattService.ACTION_DEVICE_CONNECTED:
+                BleEvents.STATE.update(state -> state.withServiceRunning(true).withDisplayConnected(true));
+                break;
+            case BleGattService.ACTION_DEVICE_DISCONNECTED:
+                BleEvents.STATE.update(state -> state.withDisplayConnected(false));
+                break;
+            case BleGattService.ACTION_PERMIT_READ:
+                BleEvents.PERMIT_READ.publish(new BleEvents.PermitRead(
+                    extras != null && extras.getBoolean(KEY_IS_NEW_PERMIT)));
+                break;
+        }
+    }
+
+    private static synchronized void watchBleProcess(IBinder token) {
+        if (token == null || token == bleToken) return;
+        if (bleToken != null) {
+            bleToken.unlinkToDeath(bleDeath, 0);
+        }
+        try {
+            token.linkToDeath(bleDeath, 0);
+            bleToken = token;
+        } catch (RemoteException e) {
+            // Already dead
+            bleToken = null;
+            BleEvents.STATE.publish(BleEvents.State.STOPPED);
+        }
+    }
+
+    // A batch buffered by Metrics in the BLE process
+    private void onMetrics(Bundle extras) {
+        if (extras == null) return;
+        String[] ops = extras.getStringArray(KEY_OPS);
+        String[] names = extras.getStringArray(KEY_NAMES);
+        long[] values = extras.getLongArray(KEY_VALUES);
+        if (ops == null || names == null || values == null) return;
+
+        Metrics metrics = Metrics.getInstance(getContext());
+        for (int i = 0; i < ops.length && i < names.length && i < values.length; i++) {
+            switch (ops[i]) {
+                case METRIC_SET:
+                    metrics.set(names[i], values[i]);
+                    break;
+                case METRIC_DURATION:
+                    metrics.recordDuration(names[i], values[i]);
+                    break;
+                default:
+                    metrics.add(names[i], values[i]);
+                    break;
+            }
+        }
+    }
+
+    private static PermitData decode(String json) {
+        if (json == null) return null;
+        try {
+            return PermitCodec.decode(json);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable permit from BLE process");
+            return null;
+        }
+    }
+
+    // Not a table: everything goes through call()
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -1,33 +1,108 @@
 package com.visproj.parkingpermitsync;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
-import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 public class PermitRepository {
+    private static final String TAG = "PermitRepository";
     private static final String PREFS_NAME = "permit_data";
     private static final String KEY_PERMIT = "cached_permit";
     private static final String KEY_LAST_SYNC = "last_sync_time";
+    private static final String KEY_PERMIT_FETCHED = "permit_fetched_time";
     private static final String KEY_LAST_DISPLAY_SYNC = "last_display_sync_time";
     private static final String KEY_DISPLAY_PERMIT_NUMBER = "display_permit_number";
     private static final String KEY_DISPLAY_PERMIT = "display_permit";
+    private static final String KEY_DISPLAY_BATTERY = "display_battery";
+    private static final String KEY_DISPLAY_FIRMWARE = "display_firmware";
+    private static final String KEY_DISPLAY_PROTOCOL = "display_protocol";
+    private static final String KEY_DISPLAY_FEATURES = "display_features";
     private static final String KEY_PREVIOUS_PERMIT = "previous_permit";
     private static final String KEY_GITHUB_URL = "github_url";
     private static final String KEY_DISPLAY_FLIPPED = "display_flipped";
+    private static final String KEY_DISPLAY_SETTINGS_VERSION = "display_settings_version";
+    private static final String KEY_PERSISTENT_LINK = "persistent_link";
     private static final String KEY_NEW_PERMIT_DETECTED = "new_permit_detected_time";
     private static final String KEY_REMINDERS_ENABLED = "reminders_enabled";
+    private static final String KEY_BROADCAST_MODE = "broadcast_mode";
     private static final String KEY_CONSECUTIVE_SYNC_FAILURES = "consecutive_sync_failures";
 
+    // How far back getPermitBefore() looks in the history log
+    private static final int HISTORY_LOOKBACK = 16;
+
     private static final String DEFAULT_GITHUB_URL =
         "https://raw.githubusercontent.com/VisTechProjects/parking_pass_display/permit/permit.json";
 
+    // What changed, delivered to listeners after the new value is stored
+    public enum Change {
+        PERMIT,          // latest permit from GitHub (or the previous permit behind it)
+        LAST_SYNC,       // GitHub sync time moved, permit content unchanged
+        DISPLAY_PERMIT,  // what the display has / when it last synced / since when it's behind
+        SETTINGS,        // GitHub URL, flip, reminders
+        SYNC_FAILURES    // consecutive sync failure count
+    }
+
+    public interface ChangeListener {
+        void onRepositoryChanged(Change change);
+    }
+
+    private static class Registration {
+        final ChangeListener listener;
+        final Executor executor;
+
+        Registration(ChangeListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private static PermitRepository instance;
+
+    private final List<Registration> listeners = new CopyOnWriteArrayList<>();
+
     private final SharedPreferences prefs;
-    private final Gson gson;
+    private final PermitHistoryLog history;
+    private final ContentResolver resolver;
+
+    // Parsed permits are kept after the first read and only replaced by this class's own
+    // setters, so getters are a field read instead of a prefs lookup + JSON parse.
+    // The instances are shared: callers must treat them as read-only.
+    // Each is held with its ParsedPermit view, built once here on ingest.
+    private ParsedPermit permit;
+    private ParsedPermit displayPermit;
+    private ParsedPermit previousPermit;
+    private boolean permitLoaded = false;
+    private boolean displayPermitLoaded = false;
+    private boolean previousPermitLoaded = false;
+
+    // Number of prefs edits applied by this instance (one per logical update)
+    private long commitCount = 0;
+
+    // Main process only: prefs and the history log must have a single writer. The
+    // ":ble" process reads and writes through PermitProvider / PermitStoreClient.
+    public static synchronized PermitRepository getInstance(Context context) {
+        if (ParkingPermitApp.isBleProcess()) {
+            throw new IllegalStateException("PermitRepository opened in the BLE process; use PermitStoreClient");
+        }
+        if (instance == null) {
+            instance = new PermitRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
 
-    public PermitRepository(Context context) {
+    // Package-private for JVM tests, which need a fresh instance each
+    PermitRepository(Context context) {
         prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        history = new PermitHistoryLog(context.getFilesDir());
+        resolver = context.getContentResolver();
 
         // One-time seed: if no previous permit exists, seed with T6199100 for price comparison
         if (getPreviousPermit() == null) {
@@ -44,41 +119,239 @@ public class PermitRepository {
         }
     }
 
-    public PermitData getPermit() {
-        String json = prefs.getString(KEY_PERMIT, null);
+    // Listener is called on the given executor for every change until removed
+    public void addListener(ChangeListener listener, Executor executor) {
+        listeners.add(new Registration(listener, executor));
+    }
+
+    public void removeListener(ChangeListener listener) {
+        for (Registration registration : listeners) {
+            if (registration.listener == listener) {
+                listeners.remove(registration);
+            }
+        }
+    }
+
+    private void publish(Change change) {
+        for (Registration registration : listeners) {
+            registration.executor.execute(() -> registration.listener.onRepositoryChanged(change));
+        }
+        // What BleGattService serves changed; its process drops its cached copy
+        if (change == Change.PERMIT || change == Change.DISPLAY_PERMIT || change == Change.SETTINGS) {
+            resolver.notifyChange(PermitProvider.PERMIT_URI, null);
+        }
+    }
+
+    private ParsedPermit readPermit(String key) {
+        String json = prefs.getString(key, null);
         if (json == null) return null;
 
         try {
-            return gson.fromJson(json, PermitData.class);
-        } catch (Exception e) {
+            PermitData permit = PermitCodec.decode(json);
+            return permit != null ? ingest(permit) : null;
+        } catch (IOException e) {
             return null;
         }
     }
 
-    public void savePermit(PermitData permit) {
-        // Save current permit as previous before overwriting (if it's a different permit)
-        PermitData currentPermit = getPermit();
-        if (currentPermit != null && currentPermit.permitNumber != null &&
-            !currentPermit.permitNumber.equals(permit.permitNumber)) {
-            setPreviousPermit(currentPermit);
+    // Parse the typed view once; fields we can't read are logged, not silently dropped
+    private static ParsedPermit ingest(PermitData permit) {
+        ParsedPermit parsed = ParsedPermit.of(permit);
+        if (parsed.problems != 0) {
+            Log.w(TAG, "Permit " + permit.permitNumber + " has unparseable fields (flags="
+                + parsed.problems + "): from='" + permit.validFrom + "' to='" + permit.validTo
+                + "' price='" + permit.price + "'");
         }
+        return parsed;
+    }
 
-        prefs.edit()
-            .putString(KEY_PERMIT, gson.toJson(permit))
-            .putLong(KEY_LAST_SYNC, System.currentTimeMillis())
-            .apply();
+    // All writes go through here so each logical update is exactly one apply()
+    private void applyEdit(SharedPreferences.Editor editor) {
+        commitCount++;
+        editor.apply();
+    }
+
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    // Start a batch of related writes that land in a single prefs commit
+    public Transaction edit() {
+        return new Transaction();
+    }
+
+    public class Transaction {
+        private PermitData permit;
+        private PermitData displayPermit;
+        private PermitData previousPermit;
+        private Integer displayBattery;
+        private String displayFirmware;
+        private Long newPermitDetectedTime;
+        private boolean clearNewPermitDetected = false;
+        private boolean resetSyncFailures = false;
+
+        private Transaction() {}
+
+        // New permit from GitHub; the current one becomes previous if the number differs
+        public Transaction savePermit(PermitData permit) {
+            this.permit = permit;
+            return this;
+        }
+
+        // Permit now on the display; also stamps the display sync time
+        public Transaction setDisplayPermit(PermitData permit) {
+            this.displayPermit = permit;
+            return this;
+        }
+
+        // Battery and firmware the display reported in its last ack
+        public Transaction setDisplayStatus(int batteryPercent, String firmware) {
+            this.displayBattery = batteryPercent;
+            this.displayFirmware = firmware;
+            return this;
+        }
+
+        public Transaction setPreviousPermit(PermitData permit) {
+            this.previousPermit = permit;
+            return this;
+        }
+
+        public Transaction setNewPermitDetectedTime(long time) {
+            this.newPermitDetectedTime = time;
+            this.clearNewPermitDetected = false;
+            return this;
+        }
+
+        public Transaction clearNewPermitDetectedTime() {
+            this.newPermitDetectedTime = null;
+            this.clearNewPermitDetected = true;
+            return this;
+        }
+
+        public Transaction resetSyncFailures() {
+            this.resetSyncFailures = true;
+            return this;
+        }
+
+        public void commit() {
+            Set<Change> changes = EnumSet.noneOf(Change.class);
+            synchronized (PermitRepository.this) {
+                boolean resetFailures = resetSyncFailures && getConsecutiveSyncFailures() != 0;
+                if (permit == null && displayPermit == null && previousPermit == null
+                    && displayBattery == null && newPermitDetectedTime == null && !clearNewPermitDetected && !resetFailures) {
+                    return;
+                }
+
+                SharedPreferences.Editor editor = prefs.edit();
+                long now = System.currentTimeMillis();
+
+                if (previousPermit != null) {
+                    PermitRepository.this.previousPermit = ingest(previousPermit);
+                    previousPermitLoaded = true;
+                    editor.putString(KEY_PREVIOUS_PERMIT, PermitCodec.encode(previousPermit));
+                    changes.add(Change.PERMIT);
+                }
+
+                if (permit != null) {
+                    // Save current permit as previous before overwriting (if it's a different permit)
+                    PermitData currentPermit = getPermit();
+                    if (currentPermit != null && currentPermit.permitNumber != null &&
+                        !currentPermit.permitNumber.equals(permit.permitNumber)) {
+                        PermitRepository.this.previousPermit = getParsedPermit();
+                        previousPermitLoaded = true;
+                        editor.putString(KEY_PREVIOUS_PERMIT, PermitCodec.encode(currentPermit));
+                    }
+                    if (currentPermit == null || !permit.permitNumber.equals(currentPermit.permitNumber)) {
+                        editor.putLong(KEY_PERMIT_FETCHED, now);
+                    }
+
+                    String json = PermitCodec.encode(permit);
+                    changes.add(json.equals(prefs.getString(KEY_PERMIT, null))
+                        ? Change.LAST_SYNC : Change.PERMIT);
+                    PermitRepository.this.permit = ingest(permit);
+                    permitLoaded = true;
+                    editor.putString(KEY_PERMIT, json)
+                        .putLong(KEY_LAST_SYNC, now);
+                    history.append(permit, PermitHistoryLog.SOURCE_FETCHED);
+                }
+
+                if (displayPermit != null) {
+                    PermitRepository.this.displayPermit = ingest(displayPermit);
+                    displayPermitLoaded = true;
+                    editor.putString(KEY_DISPLAY_PERMIT, PermitCodec.encode(displayPermit))
+                        .putString(KEY_DISPLAY_PERMIT_NUMBER, displayPermit.permitNumber)
+                        .putLong(KEY_LAST_DISPLAY_SYNC, now);
+                    history.append(displayPermit, PermitHistoryLog.SOURCE_DISPLAYED);
+                    // Display caught up, so the "new permit waiting" clock stops
+                    if (newPermitDetectedTime == null) {
+                        editor.remove(KEY_NEW_PERMIT_DETECTED);
+                    }
+                    changes.add(Change.DISPLAY_PERMIT);
+                }
+
+                if (displayBattery != null) {
+                    editor.putInt(KEY_DISPLAY_BATTERY, displayBattery)
+                        .putString(KEY_DISPLAY_FIRMWARE, displayFirmware);
+                    changes.add(Change.DISPLAY_PERMIT);
+                }
+
+                // How long the display has been behind, so PermitLifecycle re-reads it
+                if (newPermitDetectedTime != null) {
+                    editor.putLong(KEY_NEW_PERMIT_DETECTED, newPermitDetectedTime);
+                    changes.add(Change.DISPLAY_PERMIT);
+                } else if (clearNewPermitDetected) {
+                    editor.remove(KEY_NEW_PERMIT_DETECTED);
+                    changes.add(Change.DISPLAY_PERMIT);
+                }
+
+                if (resetFailures) {
+                    editor.putInt(KEY_CONSECUTIVE_SYNC_FAILURES, 0);
+                    changes.add(Change.SYNC_FAILURES);
+                }
+
+                applyEdit(editor);
+            }
+            for (Change change : changes) {
+                publish(change);
+            }
+        }
+    }
+
+    public PermitData getPermit() {
+        ParsedPermit parsed = getParsedPermit();
+        return parsed != null ? parsed.permit : null;
+    }
+
+    public synchronized ParsedPermit getParsedPermit() {
+        if (!permitLoaded) {
+            permit = readPermit(KEY_PERMIT);
+            permitLoaded = true;
+        }
+        return permit;
+    }
+
+    public void savePermit(PermitData permit) {
+        edit().savePermit(permit).commit();
     }
 
     public long getLastSyncTime() {
         return prefs.getLong(KEY_LAST_SYNC, 0);
     }
 
+    // When the current permit number was first fetched; later re-syncs of it don't move it
+    public long getPermitFetchedTime() {
+        return prefs.getLong(KEY_PERMIT_FETCHED, 0);
+    }
+
     public long getLastDisplaySyncTime() {
         return prefs.getLong(KEY_LAST_DISPLAY_SYNC, 0);
     }
 
     public void setLastDisplaySyncTime(long time) {
-        prefs.edit().putLong(KEY_LAST_DISPLAY_SYNC, time).apply();
+        synchronized (this) {
+            applyEdit(prefs.edit().putLong(KEY_LAST_DISPLAY_SYNC, time));
+        }
+        publish(Change.DISPLAY_PERMIT);
     }
 
     public String getDisplayPermitNumber() {
@@ -86,29 +359,57 @@ public class PermitRepository {
     }
 
     public void setDisplayPermitNumber(String permitNumber) {
-        prefs.edit()
-            .putString(KEY_DISPLAY_PERMIT_NUMBER, permitNumber)
-            .putLong(KEY_LAST_DISPLAY_SYNC, System.currentTimeMillis())
-            .apply();
+        synchronized (this) {
+            applyEdit(prefs.edit()
+                .putString(KEY_DISPLAY_PERMIT_NUMBER, permitNumber)
+                .putLong(KEY_LAST_DISPLAY_SYNC, System.currentTimeMillis()));
+        }
+        publish(Change.DISPLAY_PERMIT);
     }
 
     public PermitData getDisplayPermit() {
-        String json = prefs.getString(KEY_DISPLAY_PERMIT, null);
-        if (json == null) return null;
-        try {
-            return gson.fromJson(json, PermitData.class);
-        } catch (Exception e) {
-            return null;
+        ParsedPermit parsed = getParsedDisplayPermit();
+        return parsed != null ? parsed.permit : null;
+    }
+
+    public synchronized ParsedPermit getParsedDisplayPermit() {
+        if (!displayPermitLoaded) {
+            displayPermit = readPermit(KEY_DISPLAY_PERMIT);
+            displayPermitLoaded = true;
         }
+        return displayPermit;
     }
 
     public void setDisplayPermit(PermitData permit) {
-        prefs.edit()
-            .putString(KEY_DISPLAY_PERMIT, gson.toJson(permit))
-            .putString(KEY_DISPLAY_PERMIT_NUMBER, permit.permitNumber)
-            .putLong(KEY_LAST_DISPLAY_SYNC, System.currentTimeMillis())
-            .remove(KEY_NEW_PERMIT_DETECTED)
-            .apply();
+        edit().setDisplayPermit(permit).commit();
+    }
+
+    // DisplayAck.BATTERY_UNKNOWN until a display reports it
+    public int getDisplayBattery() {
+        return prefs.getInt(KEY_DISPLAY_BATTERY, DisplayAck.BATTERY_UNKNOWN);
+    }
+
+    public String getDisplayFirmware() {
+        return prefs.getString(KEY_DISPLAY_FIRMWARE, null);
+    }
+
+    // What the display last announced, LEGACY until it does; tells the UI which display
+    // commands its firmware understands
+    public DisplayCapabilities getDisplayCapabilities() {
+        String firmware = getDisplayFirmware();
+        return new DisplayCapabilities(prefs.getInt(KEY_DISPLAY_PROTOCOL, 0),
+            prefs.getInt(KEY_DISPLAY_FEATURES, 0), firmware != null ? firmware : "");
+    }
+
+    public void setDisplayCapabilities(DisplayCapabilities capabilities) {
+        synchronized (this) {
+            if (capabilities.protocolVersion == prefs.getInt(KEY_DISPLAY_PROTOCOL, 0)
+                && capabilities.features == prefs.getInt(KEY_DISPLAY_FEATURES, 0)) return;
+            applyEdit(prefs.edit()
+                .putInt(KEY_DISPLAY_PROTOCOL, capabilities.protocolVersion)
+                .putInt(KEY_DISPLAY_FEATURES, capabilities.features));
+        }
+        publish(Change.DISPLAY_PERMIT);
     }
 
     public boolean isDisplayOutOfSync() {
@@ -119,19 +420,55 @@ public class PermitRepository {
     }
 
     public PermitData getPreviousPermit() {
-        String json = prefs.getString(KEY_PREVIOUS_PERMIT, null);
-        if (json == null) return null;
-        try {
-            return gson.fromJson(json, PermitData.class);
-        } catch (Exception e) {
-            return null;
+        ParsedPermit parsed = getParsedPreviousPermit();
+        return parsed != null ? parsed.permit : null;
+    }
+
+    public synchronized ParsedPermit getParsedPreviousPermit() {
+        if (!previousPermitLoaded) {
+            previousPermit = readPermit(KEY_PREVIOUS_PERMIT);
+            previousPermitLoaded = true;
         }
+        return previousPermit;
     }
 
     public void setPreviousPermit(PermitData permit) {
-        prefs.edit()
-            .putString(KEY_PREVIOUS_PERMIT, gson.toJson(permit))
-            .apply();
+        edit().setPreviousPermit(permit).commit();
+    }
+
+    // Newest first: every distinct permit fetched or displayed, up to count
+    public List<ParsedPermit> getPermitHistory(int count) {
+        return history.latest(count);
+    }
+
+    // One page of the local history log, newest first
+    public List<ParsedPermit> getPermitHistory(int offset, int count) {
+        return history.latest(offset, count);
+    }
+
+    // The permit that came before the given one, for price comparison. Uses the
+    // history log and falls back to the stored previous permit.
+    public ParsedPermit getPermitBefore(PermitData permit) {
+        List<ParsedPermit> recent = history.latest(HISTORY_LOOKBACK);
+        int start = 0;
+        for (int i = 0; i < recent.size(); i++) {
+            if (recent.get(i).permit.permitNumber.equals(permit.permitNumber)) {
+                start = i + 1;
+                break;
+            }
+        }
+        for (int i = start; i < recent.size(); i++) {
+            ParsedPermit candidate = recent.get(i);
+            if (!candidate.permit.permitNumber.equals(permit.permitNumber) && candidate.hasPrice()) {
+                return candidate;
+            }
+        }
+
+        ParsedPermit previous = getParsedPreviousPermit();
+        if (previous != null && !permit.permitNumber.equals(previous.permit.permitNumber)) {
+            return previous;
+        }
+        return null;
     }
 
     public String getGitHubUrl() {
@@ -139,7 +476,11 @@ public class PermitRepository {
     }
 
     public void setGitHubUrl(String url) {
-        prefs.edit().putString(KEY_GITHUB_URL, url).apply();
+        synchronized (this) {
+            if (url.equals(getGitHubUrl())) return;
+            applyEdit(prefs.edit().putString(KEY_GITHUB_URL, url));
+        }
+        publish(Change.SETTINGS);
     }
 
     public boolean isDisplayFlipped() {
@@ -147,7 +488,35 @@ public class PermitRepository {
     }
 
     public void setDisplayFlipped(boolean flipped) {
-        prefs.edit().putBoolean(KEY_DISPLAY_FLIPPED, flipped).apply();
+        synchronized (this) {
+            if (flipped == isDisplayFlipped()) return;
+            applyEdit(prefs.edit()
+                .putBoolean(KEY_DISPLAY_FLIPPED, flipped)
+                .putInt(KEY_DISPLAY_SETTINGS_VERSION, (getDisplaySettingsVersion() + 1) & 0xFFFF));
+        }
+        publish(Change.SETTINGS);
+    }
+
+    // The display stays connected and is notified of changes instead of waking to poll.
+    // A display setting, so it bumps the settings version like the flip does.
+    public boolean isPersistentLinkEnabled() {
+        return prefs.getBoolean(KEY_PERSISTENT_LINK, false);
+    }
+
+    public void setPersistentLinkEnabled(boolean enabled) {
+        synchronized (this) {
+            if (enabled == isPersistentLinkEnabled()) return;
+            applyEdit(prefs.edit()
+                .putBoolean(KEY_PERSISTENT_LINK, enabled)
+                .putInt(KEY_DISPLAY_SETTINGS_VERSION, (getDisplaySettingsVersion() + 1) & 0xFFFF));
+        }
+        publish(Change.SETTINGS);
+    }
+
+    // Bumped (mod 2^16) on every display settings change; the display compares it with
+    // the version it last applied
+    public int getDisplaySettingsVersion() {
+        return prefs.getInt(KEY_DISPLAY_SETTINGS_VERSION, 0);
     }
 
     public long getNewPermitDetectedTime() {
@@ -155,11 +524,11 @@ public class PermitRepository {
     }
 
     public void setNewPermitDetectedTime(long time) {
-        prefs.edit().putLong(KEY_NEW_PERMIT_DETECTED, time).apply();
+        edit().setNewPermitDetectedTime(time).commit();
     }
 
     public void clearNewPermitDetectedTime() {
-        prefs.edit().remove(KEY_NEW_PERMIT_DETECTED).apply();
+        edit().clearNewPermitDetectedTime().commit();
     }
 
     public boolean isRemindersEnabled() {
@@ -167,19 +536,44 @@ public class PermitRepository {
     }
 
     public void setRemindersEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_REMINDERS_ENABLED, enabled).apply();
+        synchronized (this) {
+            if (enabled == isRemindersEnabled()) return;
+            applyEdit(prefs.edit().putBoolean(KEY_REMINDERS_ENABLED, enabled));
+        }
+        publish(Change.SETTINGS);
+    }
+
+    // Also advertise the whole permit (PermitBroadcast) where the phone supports
+    // extended advertising, so the display can update without connecting
+    public boolean isBroadcastModeEnabled() {
+        return prefs.getBoolean(KEY_BROADCAST_MODE, false);
+    }
+
+    public void setBroadcastModeEnabled(boolean enabled) {
+        synchronized (this) {
+            if (enabled == isBroadcastModeEnabled()) return;
+            applyEdit(prefs.edit().putBoolean(KEY_BROADCAST_MODE, enabled));
+        }
+        publish(Change.SETTINGS);
     }
 
     public int getConsecutiveSyncFailures() {
         return prefs.getInt(KEY_CONSECUTIVE_SYNC_FAILURES, 0);
     }
 
-    public void incrementSyncFailures() {
-        prefs.edit().putInt(KEY_CONSECUTIVE_SYNC_FAILURES,
-            getConsecutiveSyncFailures() + 1).apply();
+    // Atomic read-modify-write: concurrent failures from the alarm and UI paths
+    // each count. Returns the new count.
+    public int incrementSyncFailures() {
+        int failures;
+        synchronized (this) {
+            failures = getConsecutiveSyncFailures() + 1;
+            applyEdit(prefs.edit().putInt(KEY_CONSECUTIVE_SYNC_FAILURES, failures));
+        }
+        publish(Change.SYNC_FAILURES);
+        return failures;
     }
 
     public void resetSyncFailures() {
-        prefs.edit().putInt(KEY_CONSECUTIVE_SYNC_FAILURES, 0).apply();
+        edit().resetSyncFailures().commit();
     }
 }
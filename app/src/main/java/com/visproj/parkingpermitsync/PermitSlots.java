@@ -0,0 +1,84 @@
+package com.visproj.parkingpermitsync;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+// What BleGattService serves on the permit characteristic: the permit to show now and,
+// when the newest fetched permit hasn't started yet, that upcoming permit too, so the
+// display can switch on its own at the boundary instead of waiting for another sync.
+//
+// The document is the current permit's JSON (unchanged keys, so older firmware keeps
+// reading it) plus validity bounds in epoch seconds and an optional "upcoming" object
+// with the same layout:
+//   {"permitNumber":..., "validFromEpoch":..., "validToEpoch":...,
+//    "upcoming":{"permitNumber":..., "validFromEpoch":..., "validToEpoch":...}}
+// Bounds that can't be parsed are omitted. Each slot's displayFlipped carries the flip
+// setting, which is all firmware without the settings characteristic has to go on.
+public final class PermitSlots {
+    static final String KEY_VALID_FROM_EPOCH = "validFromEpoch";
+    static final String KEY_VALID_TO_EPOCH = "validToEpoch";
+    static final String KEY_UPCOMING = "upcoming";
+
+    public final ParsedPermit current;
+    public final ParsedPermit upcoming;   // null if there's nothing to switch to
+    public final long switchAt;           // upcoming's start, Long.MAX_VALUE without one
+
+    private PermitSlots(ParsedPermit current, ParsedPermit upcoming) {
+        this.current = current;
+        this.upcoming = upcoming;
+        this.switchAt = upcoming != null ? upcoming.validFromMillis : Long.MAX_VALUE;
+    }
+
+    // `previous` is the permit the fetched one replaced; it stays current only while it
+    // is still valid and the fetched one hasn't started yet
+    public static PermitSlots select(ParsedPermit fetched, ParsedPermit previous, long now) {
+        if (fetched != null && previous != null
+            && fetched.validFromMillis != ParsedPermit.UNKNOWN && now < fetched.validFromMillis
+            && previous.hasValidity() && previous.validFromMillis <= now && now <= previous.validToMillis
+            && previous.permit.isValid() && !previous.permit.permitNumber.equals(fetched.permit.permitNumber)) {
+            return new PermitSlots(previous, fetched);
+        }
+        return new PermitSlots(fetched, null);
+    }
+
+    // Newest permit in the payload: once the display has it, nothing more needs sending
+    public ParsedPermit newest() {
+        return upcoming != null ? upcoming : current;
+    }
+
+    public byte[] encode(boolean displayFlipped) {
+        if (current == null) return "{}".getBytes(StandardCharsets.UTF_8);
+        StringWriter out = new StringWriter(upcoming != null ? 512 : 256);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setHtmlSafe(true);  // same escaping as PermitCodec
+            writer.beginObject();
+            writeSlot(writer, current, displayFlipped);
+            if (upcoming != null) {
+                writer.name(KEY_UPCOMING).beginObject();
+                writeSlot(writer, upcoming, displayFlipped);
+                writer.endObject();
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeSlot(JsonWriter writer, ParsedPermit slot, boolean displayFlipped)
+            throws IOException {
+        PermitData permit = slot.permit;
+        PermitCodec.writeFields(writer,
+            permit.displayFlipped == displayFlipped ? permit : permit.withDisplayFlipped(displayFlipped));
+        if (slot.validFromMillis != ParsedPermit.UNKNOWN) {
+            writer.name(KEY_VALID_FROM_EPOCH).value(slot.validFromMillis / 1000);
+        }
+        if (slot.validToMillis != ParsedPermit.UNKNOWN) {
+            writer.name(KEY_VALID_TO_EPOCH).value(slot.validToMillis / 1000);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Binder;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The permit store as seen from the ":ble" process, through PermitProvider in the main
+// process. The read-side state (permits, display settings, display permit number) comes
+// back in one call and is cached until the provider announces a change, so a chunked
+// permit read costs one round trip at most. Writes, events and metrics need no answer: they go
+// out in order on a background thread, so the service's main thread never blocks on
+// the main process starting up.
+//
+// Every call here may start the main process, and that is intended: the store lives
+// there, an ack must be recorded even if the UI was never opened, and the status
+// events are the only way the main process learns the service's state. Metrics are
+// the exception and never call in directly; Metrics buffers them until the main
+// process is already running.
+public class PermitStoreClient {
+    private static final String TAG = "PermitStoreClient";
+
+    private static final class State {
+        final ParsedPermit permit;
+        final ParsedPermit previousPermit;
+        final ParsedPermit displayPermit;
+        final boolean displayFlipped;
+        final int settingsVersion;
+        final String displayPermitNumber;
+        final boolean broadcastMode;
+        final boolean persistentLink;
+        final long permitFetchedTime;
+
+        State(ParsedPermit permit, ParsedPermit previousPermit, ParsedPermit displayPermit,
+              boolean displayFlipped, int settingsVersion, String displayPermitNumber,
+              boolean broadcastMode, boolean persistentLink, long permitFetchedTime) {
+            this.permit = permit;
+            this.previousPermit = previousPermit;
+            this.displayPermit = displayPermit;
+            this.displayFlipped = displayFlipped;
+            this.settingsVersion = settingsVersion;
+            this.displayPermitNumber = displayPermitNumber;
+            this.broadcastMode = broadcastMode;
+            this.persistentLink = persistentLink;
+            this.permitFetchedTime = permitFetchedTime;
+        }
+    }
+
+    public interface ChangeListener {
+        void onStoreChanged();
+    }
+
+    private final ContentResolver resolver;
+    // Lets the main process notice if this process dies without reporting it
+    private final Binder token = new Binder();
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    private volatile State state;
+    private volatile int generation = 0;   // bumped on change, drops fetches that raced it
+    private volatile ChangeListener changeListener;
+
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            generation++;
+            state = null;
+            ChangeListener listener = changeListener;
+            if (listener != null) {
+                listener.onStoreChanged();
+            }
+        }
+    };
+
+    public PermitStoreClient(Context context) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+    }
+
+    // Called on a binder thread after the cached state was dropped
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    public void start() {
+        resolver.registerContentObserver(PermitProvider.PERMIT_URI, false, observer);
+    }
+
+    public void stop() {
+        resolver.unregisterContentObserver(observer);
+        state = null;
+        // Anything already queued (e.g. the stopped event) is still delivered
+        sender.shutdown();
+    }
+
+    public ParsedPermit getParsedPermit() {
+        return state().permit;
+    }
+
+    // The permit the current one replaced; may still be valid while that one is upcoming
+    public ParsedPermit getParsedPreviousPermit() {
+        return state().previousPermit;
+    }
+
+    // Last permit the display acked
+    public ParsedPermit getParsedDisplayPermit() {
+        return state().displayPermit;
+    }
+
+    public boolean isDisplayFlipped() {
+        return state().displayFlipped;
+    }
+
+    public int getDisplaySettingsVersion() {
+        return state().settingsVersion;
+    }
+
+    public String getDisplayPermitNumber() {
+        return state().displayPermitNumber;
+    }
+
+    public boolean isBroadcastModeEnabled() {
+        return state().broadcastMode;
+    }
+
+    public boolean isPersistentLinkEnabled() {
+        return state().persistentLink;
+    }
+
+    // Wall-clock time the current permit number was first fetched, 0 if unknown
+    public long getPermitFetchedTime() {
+        return state().permitFetchedTime;
+    }
+
+    public ParsedPermit getPermitBefore(PermitData permit) {
+        Bundle result = call(PermitProvider.METHOD_GET_PERMIT_BEFORE, PermitCodec.encode(permit), null);
+        PermitData before = result != null ? decode(result.getString(PermitProvider.KEY_PERMIT)) : null;
+        return before != null ? ParsedPermit.of(before) : null;
+    }
+
+    // The display confirmed it shows `permit`; only now is it recorded as on the display.
+    // ack is null for a display that read it but has no ack to send.
+    public void displayAcked(PermitData permit, boolean isNewPermit, DisplayAck ack) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(PermitProvider.KEY_IS_NEW_PERMIT, isNewPermit);
+        if (ack != null) {
+            extras.putInt(PermitProvider.KEY_BATTERY, ack.batteryPercent);
+            extras.putString(PermitProvider.KEY_FIRMWARE, ack.firmware);
+            extras.putLong(PermitProvider.KEY_RENDER_MS, ack.renderMillis);
+        }
+        send(PermitProvider.METHOD_DISPLAY_ACK, PermitCodec.encode(permit), extras);
+    }
+
+    // What the connected display announced, so the main process only sends it commands
+    // its firmware knows
+    public void displayCapabilities(DisplayCapabilities capabilities) {
+        Bundle extras = new Bundle();
+        extras.putInt(PermitProvider.KEY_PROTOCOL, capabilities.protocolVersion);
+        extras.putInt(PermitProvider.KEY_FEATURES, capabilities.features);
+        send(PermitProvider.METHOD_DISPLAY_CAPABILITIES, null, extras);
+    }
+
+    // Service status for the UI; the main process publishes it on BleEvents
+    public void sendEvent(String action) {
+        Bundle extras = new Bundle();
+        extras.putBinder(PermitProvider.KEY_TOKEN, token);
+        send(PermitProvider.METHOD_BLE_EVENT, action, extras);
+    }
+
+    public void sendEvent(String action, boolean isNewPermit) {
+        Bundle extras = new Bundle();
+        extras.putBinder(PermitProvider.KEY_TOKEN, token);
+        extras.putBoolean(PermitProvider.KEY_IS_NEW_PERMIT, isNewPermit);
+        send(PermitProvider.METHOD_BLE_EVENT, action, extras);
+    }
+
+    // A batch of metric updates, each an op (PermitProvider.METRIC_*), name and value
+    void metrics(List<String> ops, List<String> names, List<Long> values) {
+        long[] packed = new long[values.size()];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = values.get(i);
+        }
+        Bundle extras = new Bundle();
+        extras.putStringArray(PermitProvider.KEY_OPS, ops.toArray(new String[0]));
+        extras.putStringArray(PermitProvider.KEY_NAMES, names.toArray(new String[0]));
+        extras.putLongArray(PermitProvider.KEY_VALUES, packed);
+        send(PermitProvider.METHOD_METRIC, null, extras);
+    }
+
+    private State state() {
+        State current = state;
+        if (current != null) return current;
+
+        int requested = generation;
+        Bundle result = call(PermitProvider.METHOD_GET_STATE, null, null);
+        if (result == null) {
+            // Main process unreachable: serve nothing rather than stale data
+            return new State(null, null, null, false, 0, null, false, false, 0);
+        }
+        PermitData permit = decode(result.getString(PermitProvider.KEY_PERMIT));
+        PermitData previous = decode(result.getString(PermitProvider.KEY_PREVIOUS_PERMIT));
+        PermitData display = decode(result.getString(PermitProvider.KEY_DISPLAY_PERMIT));
+        current = new State(permit != null ? ParsedPermit.of(permit) : null,
+            previous != null ? ParsedPermit.of(previous) : null,
+            display != null ? ParsedPermit.of(display) : null,
+            result.getBoolean(PermitProvider.KEY_DISPLAY_FLIPPED),
+            result.getInt(PermitProvider.KEY_SETTINGS_VERSION),
+            result.getString(PermitProvider.KEY_DISPLAY_PERMIT_NUMBER),
+            result.getBoolean(PermitProvider.KEY_BROADCAST_MODE),
+            result.getBoolean(PermitProvider.KEY_PERSISTENT_LINK),
+            result.getLong(PermitProvider.KEY_PERMIT_FETCHED_TIME));
+        if (requested == generation) {
+            state = current;
+        }
+        return current;
+    }
+
+    private void send(String method, String arg, Bundle extras) {
+        sender.execute(() -> call(method, arg, extras));
+    }
+
+    private Bundle call(String method, String arg, Bundle extras) {
+        try {
+            return resolver.call(PermitProvider.PERMIT_URI, method, arg, extras);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Provider call " + method + " failed", e);
+            return null;
+        }
+    }
+
+    private static PermitData decode(String json) {
+        if (json == null) return null;
+        try {
+            return PermitCodec.decode(json);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable permit from provider");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.visproj.parkingpermitsync;
+
+import android.graphics.Color;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ForegroundColorSpan;
+
+// "(+$2.40) $50.78" with the change colored, as shown on the status card and in history
+public final class PriceText {
+    // Red for increase (paying more), green for decrease (saving money)
+    private static final int COLOR_INCREASE = Color.parseColor("#f44336");
+    private static final int COLOR_DECREASE = Color.parseColor("#4caf50");
+
+    private PriceText() {}
+
+    public static CharSequence of(ParsedPermit permit, ParsedPermit older) {
+        long diff = permit.priceChangeCents(older);
+        if (diff == ParsedPermit.UNKNOWN || diff == 0) {
+            return permit.permit.price;
+        }
+        return withChange(permit.permit.price, "(" + ParsedPermit.formatCentsChange(diff) + ")", diff > 0);
+    }
+
+    public static CharSequence withChange(String price, String change, boolean increased) {
+        SpannableString spannable = new SpannableString(change + " " + price);
+        spannable.setSpan(new ForegroundColorSpan(increased ? COLOR_INCREASE : COLOR_DECREASE),
+            0, change.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return spannable;
+    }
+}
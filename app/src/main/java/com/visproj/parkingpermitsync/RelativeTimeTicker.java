@@ -0,0 +1,71 @@
+package com.visproj.parkingpermitsync;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.TextView;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps "x min ago" labels current. Instead of polling, it works out from
+// TimeUtils when the soonest label's text will change and posts a single callback
+// for that instant; on each tick only labels whose text changed are touched.
+// Main thread only.
+public class RelativeTimeTicker {
+    private static final class Label {
+        final long timestamp;
+        String text;
+
+        Label(long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<TextView, Label> labels = new LinkedHashMap<>();
+    private final Runnable tickRunnable = this::tick;
+    private boolean running = false;
+
+    // Show the relative time of `timestamp` in `view` until unbound
+    public void bind(TextView view, long timestamp) {
+        Label label = labels.get(view);
+        if (label != null && label.timestamp == timestamp) return;
+        labels.put(view, new Label(timestamp));
+        if (running) tick();
+    }
+
+    // Stop updating `view`; its current text is left alone
+    public void unbind(TextView view) {
+        labels.remove(view);
+    }
+
+    public void start() {
+        running = true;
+        tick();
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(tickRunnable);
+    }
+
+    private void tick() {
+        handler.removeCallbacks(tickRunnable);
+        long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+
+        for (Map.Entry<TextView, Label> entry : labels.entrySet()) {
+            Label label = entry.getValue();
+            String text = TimeUtils.getRelativeTime(label.timestamp, now);
+            if (!text.equals(label.text)) {
+                entry.getKey().setText(text);
+                label.text = text;
+            }
+            next = Math.min(next, TimeUtils.getNextChangeTime(label.timestamp, now));
+        }
+
+        if (running && next != Long.MAX_VALUE) {
+            handler.postDelayed(tickRunnable, next - now);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.Context;
+
+import java.util.Objects;
+
+// Everything the status tab shows, as plain values. Built off the main thread by
+// load(); of() is pure so the mapping from permits/clock to text can be checked on a
+// plain JVM. The fragment diffs consecutive states and only touches changed views.
+// A null text field means the view is hidden.
+public final class StatusViewState {
+    public final String permitNumber;
+    public final String price;
+    public final String priceChange;          // "(+$2.40)", prefixed to price
+    public final boolean priceIncreased;
+    public final String vehicle;
+    public final String dates;
+    public final String badgeLabel;
+    public final int badgeBackground;
+
+    public final String scheduledNumber;      // null hides the scheduled card
+    public final String scheduledDates;
+    public final String scheduledVehicle;
+    public final String scheduledPrice;
+
+    public final boolean outOfSync;
+    public final long lastSyncTime;
+    public final long lastDisplaySyncTime;
+
+    public final String batteryButton;
+
+    private StatusViewState(Builder b) {
+        permitNumber = b.permitNumber;
+        price = b.price;
+        priceChange = b.priceChange;
+        priceIncreased = b.priceIncreased;
+        vehicle = b.vehicle;
+        dates = b.dates;
+        badgeLabel = b.badgeLabel;
+        badgeBackground = b.badgeBackground;
+        scheduledNumber = b.scheduledNumber;
+        scheduledDates = b.scheduledDates;
+        scheduledVehicle = b.scheduledVehicle;
+        scheduledPrice = b.scheduledPrice;
+        outOfSync = b.outOfSync;
+        lastSyncTime = b.lastSyncTime;
+        lastDisplaySyncTime = b.lastDisplaySyncTime;
+        batteryButton = b.batteryButton;
+    }
+
+    // Reads the repository and PowerManager; call off the main thread
+    public static StatusViewState load(Context context, PermitRepository repository,
+                                       PermitLifecycle lifecycle) {
+        PermitLifecycle.Snapshot snapshot = lifecycle.snapshot();
+        ParsedPermit before = snapshot.current != null
+            ? repository.getPermitBefore(snapshot.current.permit) : null;
+        return of(snapshot, before,
+            repository.isDisplayOutOfSync(),
+            repository.getLastSyncTime(),
+            repository.getLastDisplaySyncTime(),
+            SamsungBatteryHelper.isBatteryOptimizationDisabled(context),
+            SamsungBatteryHelper.isSamsungDevice());
+    }
+
+    public static StatusViewState of(PermitLifecycle.Snapshot snapshot, ParsedPermit previousPermit,
+                                     boolean outOfSync, long lastSyncTime, long lastDisplaySyncTime,
+                                     boolean batteryOptimizationDisabled, boolean samsung) {
+        Builder b = new Builder();
+        ParsedPermit current = snapshot.current;
+
+        if (current != null) {
+            PermitData permit = current.permit;
+            b.permitNumber = permit.permitNumber;
+            if (permit.price != null && !permit.price.isEmpty()) {
+                b.price = permit.price;
+                // Price change compared to previous permit (week-over-week)
+                long diff = current.priceChangeCents(previousPermit);
+                if (diff != ParsedPermit.UNKNOWN && diff != 0) {
+                    b.priceChange = "(" + ParsedPermit.formatCentsChange(diff) + ")";
+                    b.priceIncreased = diff > 0;
+                }
+            }
+            b.vehicle = vehicleLabel(permit);
+            b.dates = PermitFormatter.formatRange(current);
+            b.badgeLabel = snapshot.badge.label;
+            b.badgeBackground = snapshot.badge.background;
+
+            if (snapshot.scheduled != null) {
+                // GitHub has a newer permit than what's on the display
+                PermitData scheduled = snapshot.scheduled.permit;
+                b.scheduledNumber = scheduled.permitNumber;
+                b.scheduledDates = PermitFormatter.formatRange(snapshot.scheduled);
+                b.scheduledVehicle = vehicleLabel(scheduled);
+                b.scheduledPrice = emptyToNull(scheduled.price);
+            } else if (snapshot.estimateRange != null) {
+                // Current is expiring soon and nothing newer yet: estimate the next one
+                b.scheduledNumber = "Pending";
+                b.scheduledDates = snapshot.estimateRange;
+                b.scheduledVehicle = b.vehicle;
+                b.scheduledPrice = permit.price != null && !permit.price.isEmpty() ? "~" + permit.price : null;
+            }
+        } else {
+            b.permitNumber = "No permit";
+            b.dates = "--";
+            b.vehicle = "--";
+            b.badgeLabel = "None";
+            b.badgeBackground = R.drawable.badge_orange;
+        }
+
+        b.outOfSync = outOfSync;
+        b.lastSyncTime = lastSyncTime;
+        b.lastDisplaySyncTime = lastDisplaySyncTime;
+
+        if (!batteryOptimizationDisabled) {
+            b.batteryButton = samsung ? "Fix Battery Settings" : "Disable Battery Optimization";
+        }
+        return new StatusViewState(b);
+    }
+
+    // Build the "Name (PLATE)" label from the permit's own vehicleName (falls back if missing).
+    static String vehicleLabel(PermitData p) {
+        String name = (p.vehicleName != null && !p.vehicleName.isEmpty()) ? p.vehicleName : "Vehicle";
+        return name + " (" + p.plateNumber + ")";
+    }
+
+    private static String emptyToNull(String text) {
+        return text != null && !text.isEmpty() ? text : null;
+    }
+
+    public boolean samePermit(StatusViewState other) {
+        return other != null
+            && Objects.equals(permitNumber, other.permitNumber)
+            && Objects.equals(vehicle, other.vehicle)
+            && Objects.equals(dates, other.dates);
+    }
+
+    public boolean samePrice(StatusViewState other) {
+        return other != null
+            && Objects.equals(price, other.price)
+            && Objects.equals(priceChange, other.priceChange)
+            && priceIncreased == other.priceIncreased;
+    }
+
+    public boolean sameBadge(StatusViewState other) {
+        return other != null
+            && Objects.equals(badgeLabel, other.badgeLabel)
+            && badgeBackground == other.badgeBackground;
+    }
+
+    public boolean sameScheduled(StatusViewState other) {
+        return other != null
+            && Objects.equals(scheduledNumber, other.scheduledNumber)
+            && Objects.equals(scheduledDates, other.scheduledDates)
+            && Objects.equals(scheduledVehicle, other.scheduledVehicle)
+            && Objects.equals(scheduledPrice, other.scheduledPrice);
+    }
+
+    public boolean sameSyncTimes(StatusViewState other) {
+        return other != null
+            && outOfSync == other.outOfSync
+            && lastSyncTime == other.lastSyncTime
+            && lastDisplaySyncTime == other.lastDisplaySyncTime;
+    }
+
+    public boolean sameBattery(StatusViewState other) {
+        return other != null && Objects.equals(batteryButton, other.batteryButton);
+    }
+
+    private static final class Builder {
+        String permitNumber;
+        String price;
+        String priceChange;
+        boolean priceIncreased;
+        String vehicle;
+        String dates;
+        String badgeLabel;
+        int badgeBackground;
+        String scheduledNumber;
+        String scheduledDates;
+        String scheduledVehicle;
+        String scheduledPrice;
+        boolean outOfSync;
+        long lastSyncTime;
+        long lastDisplaySyncTime;
+        String batteryButton;
+    }
+}
@@ -0,0 +1,32 @@
+package com.visproj.parkingpermitsync;
+
+// Service data BleGattService advertises under SERVICE_UUID, so a display that is only
+// scanning can tell whether anything changed without connecting:
+//   byte  0    format (FORMAT)
+//   bytes 1-4  hash of the permit payload it would read (DisplayAck.hash, little-endian)
+//   bytes 5-6  display settings version (little-endian)
+//   byte  7    display settings flags, as in DisplaySettings
+// If the hash matches what it last rendered and the settings version what it last
+// applied, there is nothing to fetch. A newer settings version can be applied straight
+// from the flags. A display on a persistent link gets the same bytes as notifications
+// on the change characteristic instead.
+public final class SyncBeacon {
+    public static final byte FORMAT = 1;
+    public static final int SIZE = 8;
+
+    private SyncBeacon() {}
+
+    public static byte[] encode(int payloadHash, int settingsVersion, boolean flipped,
+                                boolean persistentLink) {
+        return new byte[] {
+            FORMAT,
+            (byte) payloadHash,
+            (byte) (payloadHash >> 8),
+            (byte) (payloadHash >> 16),
+            (byte) (payloadHash >> 24),
+            (byte) settingsVersion,
+            (byte) (settingsVersion >> 8),
+            DisplaySettings.flags(flipped, persistentLink)
+        };
+    }
+}
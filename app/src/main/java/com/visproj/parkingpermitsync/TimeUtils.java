@@ -1,10 +1,19 @@
 package com.visproj.parkingpermitsync;
 
 public class TimeUtils {
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final long WEEK_MS = 7 * DAY_MS;
+
     public static String getRelativeTime(long timestamp) {
+        return getRelativeTime(timestamp, System.currentTimeMillis());
+    }
+
+    public static String getRelativeTime(long timestamp, long now) {
         if (timestamp == 0) return "Never";
 
-        long now = System.currentTimeMillis();
         long diff = now - timestamp;
 
         if (diff < 0) return "Just now";
@@ -29,4 +38,27 @@ public class TimeUtils {
             return weeks == 1 ? "1 week ago" : weeks + " weeks ago";
         }
     }
+
+    // Instant after `now` at which getRelativeTime(timestamp) next returns different
+    // text: the next boundary of whichever unit is currently shown
+    public static long getNextChangeTime(long timestamp, long now) {
+        if (timestamp == 0) return Long.MAX_VALUE;
+
+        long diff = now - timestamp;
+        if (diff < 5 * SECOND_MS) return timestamp + 5 * SECOND_MS;  // "Just now" (incl. future)
+
+        long unit;
+        if (diff < MINUTE_MS) {
+            unit = SECOND_MS;
+        } else if (diff < HOUR_MS) {
+            unit = MINUTE_MS;
+        } else if (diff < DAY_MS) {
+            unit = HOUR_MS;
+        } else if (diff < WEEK_MS) {
+            unit = DAY_MS;
+        } else {
+            unit = WEEK_MS;
+        }
+        return timestamp + (diff / unit + 1) * unit;
+    }
 }
@@ -0,0 +1,450 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Disk cache behind WebViewFragment's shouldInterceptRequest for the History site.
+// Stale-while-revalidate: a cached page or asset is served immediately and, at most
+// once a minute per URL, re-checked in the background with a conditional GET, so the
+// next visit gets the fresh copy. Misses are fetched here and stored. Bounded by total
+// size with least-recently-used eviction.
+//
+// Only GETs for static assets (stylesheets, scripts, images, fonts) on the History host
+// are handled. Pages can be per-user, so they always load normally. Assets are
+// fetched without the session cookie and without following redirects. A response
+// that sets a cookie, or that is anything but a 200, is handed back to the WebView
+// to load itself, so it never lands in the cache under another user's URL.
+// Everything else returns null so the WebView loads it normally.
+public class WebAssetCache {
+    private static final String TAG = "WebAssetCache";
+    private static final String DIR_NAME = "web_assets";
+
+    public static final String HOST = "fucktorontoparking.ca";
+
+    private static final long MAX_BYTES = 8 * 1024 * 1024;
+    private static final long MAX_ENTRY_BYTES = 2 * 1024 * 1024;
+    private static final long REVALIDATE_INTERVAL_MS = 60 * 1000;
+
+    private static final String META_URL = "url";
+    private static final String META_MIME = "mime";
+    private static final String META_ENCODING = "encoding";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_CHECKED_AT = "checkedAt";
+    private static final String META_HEADER = "header.";
+
+    // Path extensions of shared assets that are the same for every user
+    private static final Set<String> STATIC_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "css", "js", "mjs", "map", "png", "jpg", "jpeg", "gif", "webp", "svg", "ico",
+        "woff", "woff2", "ttf", "otf", "eot"));
+
+    // Response headers not replayed from the cache: per-user, or describe the wire
+    // encoding OkHttp already undid
+    private static final Set<String> SKIPPED_HEADERS = new HashSet<>(Arrays.asList(
+        "set-cookie", "content-length", "content-encoding", "transfer-encoding", "connection",
+        "keep-alive", "content-type", "date", "age"));
+
+    private static WebAssetCache instance;
+
+    // What the WebView needs to build a WebResourceResponse
+    public static final class Asset {
+        public final String mimeType;
+        public final String encoding;
+        public final Map<String, String> headers;
+        public final byte[] body;
+        public final boolean fromCache;
+
+        Asset(String mimeType, String encoding, Map<String, String> headers, byte[] body, boolean fromCache) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final String host;
+    private final OkHttpClient client;
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+
+    // key -> body size, in access order (eldest = least recently used)
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> revalidating = new HashSet<>();
+    private long totalBytes = 0;
+    private boolean loaded = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+
+    public static synchronized WebAssetCache getInstance(Context context) {
+        if (instance == null) {
+            File dir = new File(context.getApplicationContext().getCacheDir(), DIR_NAME);
+            instance = new WebAssetCache(dir, MAX_BYTES, HOST, new OkHttpClient());
+        }
+        return instance;
+    }
+
+    // Host and client are injectable so the cache can be pointed at a local server
+    WebAssetCache(File dir, long maxBytes, String host, OkHttpClient client) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.host = host;
+        // A redirect (e.g. to the login page) must not be stored under the asset's URL
+        this.client = client.newBuilder()
+            .followRedirects(false)
+            .followSslRedirects(false)
+            .build();
+    }
+
+    public boolean isCacheable(String method, String url) {
+        if (!"GET".equalsIgnoreCase(method)) return false;
+        try {
+            URI uri = new URI(url);
+            String scheme = uri.getScheme();
+            String path = uri.getPath() != null ? uri.getPath() : "";
+            int dot = path.lastIndexOf('.');
+            String extension = dot > path.lastIndexOf('/') ? path.substring(dot + 1).toLowerCase() : "";
+            return ("https".equals(scheme) || "http".equals(scheme))
+                && host.equalsIgnoreCase(uri.getHost())
+                && STATIC_EXTENSIONS.contains(extension);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+    }
+
+    // Cached copy (revalidated in the background) or a fresh fetch. Returns null if the
+    // URL isn't cached and can't be fetched, leaving the WebView to try on its own.
+    // Blocks on the network for misses: call from the WebView's IO thread only.
+    public Asset get(String url, Map<String, String> requestHeaders) {
+        String key = keyFor(url);
+        Asset cached = read(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(cached.body.length);
+            maybeRevalidate(key, url, requestHeaders);
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        try {
+            return fetch(key, url, requestHeaders, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Fetch failed for " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    // Move the counters accumulated since the last flush into Metrics
+    public void flushStats(Metrics metrics) {
+        long h = hits.getAndSet(0);
+        long m = misses.getAndSet(0);
+        long saved = bytesSaved.getAndSet(0);
+        long r = refreshed.getAndSet(0);
+        if (h + m == 0) return;
+        metrics.add("web_cache.hit", h);
+        metrics.add("web_cache.miss", m);
+        metrics.add("web_cache.bytes_saved", saved);
+        metrics.add("web_cache.refreshed", r);
+        Log.d(TAG, "Hit ratio " + (100 * h / (h + m)) + "% (" + h + "/" + (h + m) + "), "
+            + (saved / 1024) + " KB saved, " + r + " refreshed");
+    }
+
+    private void maybeRevalidate(String key, String url, Map<String, String> requestHeaders) {
+        Properties meta = readMeta(key);
+        if (meta == null) return;
+        long checkedAt = Long.parseLong(meta.getProperty(META_CHECKED_AT, "0"));
+        if (System.currentTimeMillis() - checkedAt < REVALIDATE_INTERVAL_MS) return;
+
+        synchronized (revalidating) {
+            if (!revalidating.add(key)) return;
+        }
+        revalidator.execute(() -> {
+            try {
+                fetch(key, url, requestHeaders, meta);
+            } catch (IOException e) {
+                // Offline: keep serving the stale copy
+                Log.d(TAG, "Revalidate failed for " + url + ": " + e.getMessage());
+            } finally {
+                synchronized (revalidating) {
+                    revalidating.remove(key);
+                }
+            }
+        });
+    }
+
+    // Network fetch; conditional when `meta` (the cached entry's) is given
+    private Asset fetch(String key, String url, Map<String, String> requestHeaders,
+                        Properties meta) throws IOException {
+        Request.Builder builder = new Request.Builder().url(url);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                // Shared assets are fetched as nobody, so the cached copy is the same for everyone
+                if ("Cookie".equalsIgnoreCase(header.getKey())
+                    || "Authorization".equalsIgnoreCase(header.getKey())) {
+                    continue;
+                }
+                builder.header(header.getKey(), header.getValue());
+            }
+        }
+        if (meta != null) {
+            String etag = meta.getProperty(META_ETAG);
+            String lastModified = meta.getProperty(META_LAST_MODIFIED);
+            if (etag != null) builder.header("If-None-Match", etag);
+            if (lastModified != null) builder.header("If-Modified-Since", lastModified);
+        }
+
+        Call call = client.newCall(builder.build());
+        try (Response response = call.execute()) {
+            if (response.code() == 304 && meta != null) {
+                meta.setProperty(META_CHECKED_AT, Long.toString(System.currentTimeMillis()));
+                writeMeta(key, meta);
+                return null;
+            }
+            if (response.code() != 200) {
+                throw new IOException("HTTP " + response.code());
+            }
+            if (response.header("Set-Cookie") != null) {
+                // The cookie would be lost here and the body may be per-user
+                throw new IOException("Response sets a cookie");
+            }
+
+            String contentType = response.header("Content-Type", "application/octet-stream");
+            String mimeType = contentType;
+            String encoding = null;
+            int semicolon = contentType.indexOf(';');
+            if (semicolon >= 0) {
+                mimeType = contentType.substring(0, semicolon).trim();
+                int charset = contentType.toLowerCase().indexOf("charset=");
+                if (charset >= 0) {
+                    encoding = contentType.substring(charset + "charset=".length()).trim();
+                }
+            }
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (String name : response.headers().names()) {
+                if (!SKIPPED_HEADERS.contains(name.toLowerCase())) {
+                    headers.put(name, response.header(name));
+                }
+            }
+
+            byte[] body = response.body().bytes();
+            String cacheControl = response.header("Cache-Control", "");
+            if (body.length <= MAX_ENTRY_BYTES && !cacheControl.contains("no-store")
+                && !cacheControl.contains("private")) {
+                Properties newMeta = new Properties();
+                newMeta.setProperty(META_URL, url);
+                newMeta.setProperty(META_MIME, mimeType);
+                if (encoding != null) newMeta.setProperty(META_ENCODING, encoding);
+                String etag = response.header("ETag");
+                String lastModified = response.header("Last-Modified");
+                if (etag != null) newMeta.setProperty(META_ETAG, etag);
+                if (lastModified != null) newMeta.setProperty(META_LAST_MODIFIED, lastModified);
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    newMeta.setProperty(META_HEADER + header.getKey(), header.getValue());
+                }
+                newMeta.setProperty(META_CHECKED_AT, Long.toString(System.currentTimeMillis()));
+                store(key, newMeta, body);
+                if (meta != null) {
+                    refreshed.incrementAndGet();
+                    Log.d(TAG, "Refreshed " + url);
+                }
+            }
+            return new Asset(mimeType, encoding, headers, body, false);
+        }
+    }
+
+    private synchronized Asset read(String key) {
+        ensureLoaded();
+        if (!index.containsKey(key)) return null;   // also bumps it to most recent
+
+        Properties meta = readMeta(key);
+        byte[] body = readFile(bodyFile(key));
+        if (meta == null || body == null) {
+            remove(key);
+            return null;
+        }
+        // Persist recency so LRU order survives restarts
+        bodyFile(key).setLastModified(System.currentTimeMillis());
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : meta.stringPropertyNames()) {
+            if (name.startsWith(META_HEADER)) {
+                headers.put(name.substring(META_HEADER.length()), meta.getProperty(name));
+            }
+        }
+        return new Asset(meta.getProperty(META_MIME), meta.getProperty(META_ENCODING), headers, body, true);
+    }
+
+    private synchronized void store(String key, Properties meta, byte[] body) {
+        ensureLoaded();
+        if (!dir.exists() && !dir.mkdirs()) return;
+
+        File tmp = new File(dir, key + ".tmp");
+        if (!writeFile(tmp, body) || !tmp.renameTo(bodyFile(key))) {
+            tmp.delete();
+            return;
+        }
+        writeMeta(key, meta);
+
+        Long old = index.put(key, (long) body.length);
+        totalBytes += body.length - (old != null ? old : 0);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            bodyFile(eldest.getKey()).delete();
+            metaFile(eldest.getKey()).delete();
+            it.remove();
+            Log.d(TAG, "Evicted " + eldest.getKey() + ", " + totalBytes + " bytes left");
+        }
+    }
+
+    private void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) totalBytes -= size;
+        bodyFile(key).delete();
+        metaFile(key).delete();
+    }
+
+    // Rebuild the LRU index from the directory, oldest access first
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".body"));
+        if (files == null) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        List<String> orphans = new ArrayList<>();
+        for (File file : files) {
+            String key = file.getName().substring(0, file.getName().length() - ".body".length());
+            // Pages cached before only static assets were kept may be per-user
+            Properties meta = readMeta(key);
+            if (meta == null || !isCacheable("GET", meta.getProperty(META_URL, ""))) {
+                orphans.add(key);
+                continue;
+            }
+            index.put(key, file.length());
+            totalBytes += file.length();
+        }
+        for (String key : orphans) {
+            bodyFile(key).delete();
+            metaFile(key).delete();
+        }
+        evict();
+        Log.d(TAG, "Loaded " + index.size() + " entries, " + totalBytes + " bytes");
+    }
+
+    private Properties readMeta(String key) {
+        File file = metaFile(key);
+        if (!file.exists()) return null;
+        try (InputStream in = new FileInputStream(file)) {
+            Properties meta = new Properties();
+            meta.load(in);
+            return meta;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeMeta(String key, Properties meta) {
+        try (OutputStream out = new FileOutputStream(metaFile(key))) {
+            meta.store(out, null);
+        } catch (IOException e) {
+            Log.w(TAG, "Meta write failed for " + key, e);
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) return null;
+                read += n;
+            }
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean writeFile(File file, byte[] data) {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Write failed: " + file.getName(), e);
+            return false;
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(dir, key + ".body");
+    }
+
+    private File metaFile(String key) {
+        return new File(dir, key + ".meta");
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.visproj.parkingpermitsync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+
+// Full-screen WebViewFragment for the site pages that have no native screen (settings,
+// and the full history behind HistoryFragment's local list)
+public class WebPageActivity extends AppCompatActivity {
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_TITLE = "title";
+
+    private WebViewFragment webViewFragment;
+
+    public static Intent newIntent(Context context, String url, String title) {
+        return new Intent(context, WebPageActivity.class)
+            .putExtra(EXTRA_URL, url)
+            .putExtra(EXTRA_TITLE, title);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_web);
+
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setTitle(getIntent().getStringExtra(EXTRA_TITLE));
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+        toolbar.setNavigationOnClickListener(v -> finish());
+
+        if (savedInstanceState == null) {
+            webViewFragment = WebViewFragment.newInstance(getIntent().getStringExtra(EXTRA_URL));
+            getSupportFragmentManager().beginTransaction()
+                .replace(R.id.webFragmentContainer, webViewFragment)
+                .commit();
+        } else {
+            webViewFragment = (WebViewFragment) getSupportFragmentManager()
+                .findFragmentById(R.id.webFragmentContainer);
+        }
+    }
+
+    @Override
+    public void onBackPressed() {
+        // Handle WebView back navigation
+        if (webViewFragment != null && webViewFragment.canGoBack()) {
+            webViewFragment.goBack();
+        } else {
+            super.onBackPressed();
+        }
+    }
+}
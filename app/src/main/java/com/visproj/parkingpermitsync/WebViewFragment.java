@@ -1,26 +1,86 @@
 package com.visproj.parkingpermitsync;
 
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.LayoutInflater;
-import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import java.io.ByteArrayInputStream;
+
+// Site pages without a native screen, hosted by WebPageActivity. A WebView brings
+// native memory and renderer startup with it (webview.create and
+// memory.webview_created in Metrics), so it is only created once the fragment is
+// resumed and is destroyed again under memory pressure while hidden. Its
+// back/forward state is kept in a Bundle and restored on return.
+// Static assets go through WebAssetCache so they come from disk; pages load live.
 public class WebViewFragment extends Fragment {
+    private static final String TAG = "WebViewFragment";
 
-    private static final String URL = "https://fucktorontoparking.ca/history/";
+    private static final String ARG_URL = "url";
+    private static final String STATE_URL = "url";
 
+    private FrameLayout webViewContainer;
     private WebView webView;
     private ProgressBar progressBar;
+    private WebAssetCache assetCache;
+
+    // URL to show when the WebView is next created, and its saved history after a trim
+    private String pendingUrl;
+    private Bundle webViewState;
+
+    // Only a WebView the user isn't looking at is released; its size can't be measured
+    // from here, so the readout just shows whether one is alive
+    private final MemoryRegistry.Trimmable memory = new MemoryRegistry.Trimmable() {
+        @Override
+        public long bytesHeld() {
+            return webView != null ? MemoryRegistry.UNKNOWN : 0;
+        }
+
+        @Override
+        public void shrink() {
+        }
+
+        @Override
+        public void clear() {
+            handleTrimMemory();
+        }
+    };
+
+    public static WebViewFragment newInstance(@NonNull String url) {
+        WebViewFragment fragment = new WebViewFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_URL, url);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState != null) {
+            pendingUrl = savedInstanceState.getString(STATE_URL);
+        } else if (getArguments() != null) {
+            pendingUrl = getArguments().getString(ARG_URL);
+        }
+        // Low pressure covers running low in the foreground and being cached in the
+        // background; UI_HIDDEN alone just means the user switched apps
+        MemoryRegistry.getInstance().register("webview", memory, null, MemoryRegistry.Pressure.LOW);
+        assetCache = WebAssetCache.getInstance(requireContext());
+    }
 
     @Nullable
     @Override
@@ -32,11 +92,92 @@ public class WebViewFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        webView = view.findViewById(R.id.webView);
+        webViewContainer = view.findViewById(R.id.webViewContainer);
         progressBar = view.findViewById(R.id.progressBar);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (webView == null) {
+            createWebView();
+        } else {
+            webView.onResume();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (webView != null) {
+            webView.onPause();
+        }
+        assetCache.flushStats(Metrics.getInstance(requireContext()));
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // Only the URL: a full WebView state bundle can exceed the binder limit
+        String url = webView != null ? webView.getUrl() : pendingUrl;
+        if (url != null) {
+            outState.putString(STATE_URL, url);
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        releaseWebView();
+        webViewContainer = null;
+        progressBar = null;
+        super.onDestroyView();
+    }
 
+    @Override
+    public void onDestroy() {
+        MemoryRegistry.getInstance().unregister(memory);
+        super.onDestroy();
+    }
+
+    private void createWebView() {
+        long start = SystemClock.elapsedRealtime();
+        webView = new WebView(requireContext());
+        webViewContainer.addView(webView, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
         setupWebView();
-        webView.loadUrl(URL);
+
+        if (webViewState != null && webView.restoreState(webViewState) != null) {
+            Log.d(TAG, "WebView restored after trim");
+        } else if (pendingUrl != null) {
+            webView.loadUrl(pendingUrl);
+        }
+        webViewState = null;
+        pendingUrl = null;
+
+        Metrics metrics = Metrics.getInstance(requireContext());
+        metrics.recordDuration("webview.create", SystemClock.elapsedRealtime() - start);
+        metrics.recordPss("memory.webview_created");
+    }
+
+    // Destroy the WebView but keep its history so the page comes back where the user left it
+    private void releaseWebView() {
+        if (webView == null) return;
+        webViewState = new Bundle();
+        webView.saveState(webViewState);
+        pendingUrl = webView.getUrl();
+        webViewContainer.removeView(webView);
+        webView.stopLoading();
+        webView.destroy();
+        webView = null;
+    }
+
+    private void handleTrimMemory() {
+        // Never pull the page out from under the user
+        if (webView == null || isResumed()) return;
+
+        releaseWebView();
+        Log.d(TAG, "WebView released on trim");
+        Metrics.getInstance(requireContext()).increment("webview.trimmed");
     }
 
     private void setupWebView() {
@@ -45,49 +186,30 @@ public class WebViewFragment extends Fragment {
         settings.setDomStorageEnabled(true);
         settings.setCacheMode(WebSettings.LOAD_DEFAULT);
 
-        // Prevent ViewPager from intercepting vertical scroll gestures in WebView
-        webView.setOnTouchListener(new View.OnTouchListener() {
-            private float startX, startY;
-            private boolean isScrolling = false;
-
+        webView.setWebViewClient(new WebViewClient() {
+            // Serve the site's static assets from WebAssetCache (runs on a WebView IO thread).
+            // Pages load normally, with the session cookie.
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        startX = event.getX();
-                        startY = event.getY();
-                        isScrolling = false;
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        float dx = Math.abs(event.getX() - startX);
-                        float dy = Math.abs(event.getY() - startY);
-                        // If scrolling more vertically than horizontally, block ViewPager
-                        if (!isScrolling && (dx > 10 || dy > 10)) {
-                            isScrolling = true;
-                            if (dy > dx) {
-                                v.getParent().requestDisallowInterceptTouchEvent(true);
-                            }
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                    case MotionEvent.ACTION_CANCEL:
-                        isScrolling = false;
-                        break;
-                }
-                return false;
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                String url = request.getUrl().toString();
+                if (!assetCache.isCacheable(request.getMethod(), url)) return null;
+
+                WebAssetCache.Asset asset = assetCache.get(url, request.getRequestHeaders());
+                if (asset == null) return null;
+                return new WebResourceResponse(asset.mimeType, asset.encoding, 200, "OK",
+                    asset.headers, new ByteArrayInputStream(asset.body));
             }
-        });
 
-        webView.setWebViewClient(new WebViewClient() {
             @Override
             public void onPageFinished(WebView view, String url) {
-                progressBar.setVisibility(View.GONE);
+                if (progressBar != null) progressBar.setVisibility(View.GONE);
             }
         });
 
         webView.setWebChromeClient(new WebChromeClient() {
             @Override
             public void onProgressChanged(WebView view, int newProgress) {
+                if (progressBar == null) return;
                 if (newProgress < 100) {
                     progressBar.setVisibility(View.VISIBLE);
                 } else {
@@ -97,12 +219,6 @@ public class WebViewFragment extends Fragment {
         });
     }
 
-    public void refresh() {
-        if (webView != null) {
-            webView.reload();
-        }
-    }
-
     public boolean canGoBack() {
         return webView != null && webView.canGoBack();
     }
@@ -112,10 +228,4 @@ public class WebViewFragment extends Fragment {
             webView.goBack();
         }
     }
-
-    public void loadUrl(String url) {
-        if (webView != null) {
-            webView.loadUrl(url);
-        }
-    }
 }
@@ -0,0 +1,158 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class EventBusTest {
+    // Runs nothing until drained, like a busy main thread
+    static final class QueueExecutor implements Executor {
+        final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            queue.add(task);
+        }
+
+        void drain() {
+            while (!queue.isEmpty()) {
+                queue.remove(0).run();
+            }
+        }
+    }
+
+    @Test
+    public void stickyDeliversTheCurrentValueOnSubscribe() {
+        EventBus<String> bus = EventBus.sticky("initial");
+        List<String> seen = new ArrayList<>();
+        bus.subscribe(seen::add, Runnable::run);
+        assertEquals(Arrays.asList("initial"), seen);
+
+        bus.publish("next");
+        assertEquals(Arrays.asList("initial", "next"), seen);
+        assertEquals("next", bus.get());
+    }
+
+    @Test
+    public void stickyBurstCoalescesToTheLatest() {
+        EventBus<Integer> bus = EventBus.sticky(0);
+        QueueExecutor executor = new QueueExecutor();
+        List<Integer> seen = new ArrayList<>();
+        bus.subscribe(seen::add, executor);
+        executor.drain();
+        seen.clear();
+
+        for (int i = 1; i <= 1000; i++) {
+            bus.publish(i);
+        }
+        assertEquals("one queued delivery for the whole burst", 1, executor.queue.size());
+        executor.drain();
+        assertEquals(Arrays.asList(1000), seen);
+    }
+
+    @Test
+    public void plainBusDeliversEveryEvent() {
+        EventBus<Integer> bus = EventBus.events();
+        QueueExecutor executor = new QueueExecutor();
+        List<Integer> seen = new ArrayList<>();
+        bus.subscribe(seen::add, executor);
+        assertTrue("no replay on a plain bus", executor.queue.isEmpty());
+
+        for (int i = 1; i <= 3; i++) {
+            bus.publish(i);
+        }
+        executor.drain();
+        assertEquals(Arrays.asList(1, 2, 3), seen);
+    }
+
+    @Test
+    public void unsubscribeDropsQueuedAndLaterDeliveries() {
+        for (EventBus<String> bus : Arrays.asList(EventBus.sticky("initial"), EventBus.<String>events())) {
+            QueueExecutor executor = new QueueExecutor();
+            List<String> seen = new ArrayList<>();
+            EventBus.Subscriber<String> subscriber = seen::add;
+            bus.subscribe(subscriber, executor);
+            bus.publish("queued");
+
+            bus.unsubscribe(subscriber);
+            bus.publish("after");
+            executor.drain();
+            assertTrue("got " + seen, seen.isEmpty());
+        }
+    }
+
+    @Test
+    public void updateOnlyNotifiesWhenTheStateChanges() {
+        EventBus<String> bus = EventBus.sticky("a");
+        QueueExecutor executor = new QueueExecutor();
+        List<String> seen = new ArrayList<>();
+        bus.subscribe(seen::add, executor);
+        executor.drain();
+
+        assertEquals("a", bus.update(state -> state));
+        assertTrue(executor.queue.isEmpty());
+
+        assertEquals("ab", bus.update(state -> state + "b"));
+        executor.drain();
+        assertEquals(Arrays.asList("a", "ab"), seen);
+    }
+
+    // Publishing while a delivery is still queued allocates nothing
+    @Test
+    public void publishIntoAQueuedDeliveryIsAllocationFree() {
+        EventBus<Object> bus = EventBus.sticky(new Object());
+        QueueExecutor executor = new QueueExecutor();
+        bus.subscribe(event -> { }, executor);   // delivery stays queued throughout
+        Object[] values = new Object[1024];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Object();
+        }
+        int iterations = 200_000;
+        for (int i = 0; i < iterations; i++) {  // warm-up
+            bus.publish(values[i & 1023]);
+        }
+
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return;   // JVM can't tell
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long id = Thread.currentThread().getId();
+        long bytesBefore = allocations.getThreadAllocatedBytes(id);
+        for (int i = 0; i < iterations; i++) {
+            bus.publish(values[i & 1023]);
+        }
+        long bytes = allocations.getThreadAllocatedBytes(id) - bytesBefore;
+        assertTrue("publish allocated " + bytes + " bytes", bytes < iterations / 10);
+    }
+
+    // A burst to a subscriber on its own thread coalesces and ends on the newest value
+    @Test
+    public void burstCoalescesToTheLatest() throws Exception {
+        int iterations = 200_000;
+        EventBus<Integer> counter = EventBus.sticky(0);
+        ExecutorService subscriberThread = Executors.newSingleThreadExecutor();
+        CountDownLatch last = new CountDownLatch(1);
+        int[] deliveries = new int[1];
+        counter.subscribe(value -> {
+            deliveries[0]++;
+            if (value == iterations) last.countDown();
+        }, subscriberThread);
+        for (int i = 1; i <= iterations; i++) {
+            counter.publish(i);
+        }
+        assertTrue("latest value not delivered", last.await(30, TimeUnit.SECONDS));
+        subscriberThread.shutdown();
+        assertTrue(subscriberThread.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue("bursts should coalesce", deliveries[0] < iterations);
+    }
+}
@@ -0,0 +1,52 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public class PermitBroadcastTest {
+    private static PermitSlots slots(PermitData permit) {
+        return PermitSlots.select(ParsedPermit.of(permit), null, 0);
+    }
+
+    @Test
+    public void headerCarriesTheFlip() {
+        PermitSlots slots = slots(PermitRepositoryTest.permit("T1"));
+        byte[] flipped = PermitBroadcast.encode(slots, 0x0102, 0x12345678, true);
+        byte[] upright = PermitBroadcast.encode(slots, 0x0102, 0x12345678, false);
+        assertNotNull(flipped);
+
+        ByteBuffer buffer = ByteBuffer.wrap(flipped).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(PermitBroadcast.FORMAT, buffer.get());
+        assertEquals(0x0102, buffer.getShort());
+        assertEquals(0x12345678, buffer.getInt());
+        assertEquals(1, buffer.get());          // one slot
+        assertEquals(0x01, buffer.get());       // flipped
+        assertEquals(0x00, upright[8]);
+
+        // The CRC covers the flags too
+        CRC32 crc = new CRC32();
+        crc.update(flipped, 0, flipped.length - 4);
+        assertEquals((int) crc.getValue(),
+            ByteBuffer.wrap(flipped, flipped.length - 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt());
+        assertEquals(flipped.length, upright.length);
+        assertFalse(Arrays.equals(Arrays.copyOfRange(flipped, flipped.length - 4, flipped.length),
+            Arrays.copyOfRange(upright, upright.length - 4, upright.length)));
+    }
+
+    // The display can't rebuild a price text it doesn't expect, so those aren't encoded
+    @Test
+    public void unusualPriceIsNotEncoded() {
+        PermitData permit = PermitRepositoryTest.permit("T1");
+        permit.price = "50 CAD";
+        assertNull(PermitBroadcast.encode(slots(permit), 0, 0, false));
+    }
+}
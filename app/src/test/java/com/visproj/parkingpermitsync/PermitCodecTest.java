@@ -0,0 +1,126 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class PermitCodecTest {
+    // PermitData as it was bound by reflective Gson before PermitCodec
+    static class GsonPermit {
+        @SerializedName("permitNumber") String permitNumber = "";
+        @SerializedName("plateNumber") String plateNumber = "";
+        @SerializedName("vehicleName") String vehicleName = "";
+        @SerializedName("validFrom") String validFrom = "";
+        @SerializedName("validTo") String validTo = "";
+        @SerializedName("barcodeValue") String barcodeValue = "";
+        @SerializedName("barcodeLabel") String barcodeLabel = "";
+        @SerializedName("amountPaid") String price = "";
+        @SerializedName("displayFlipped") boolean displayFlipped = false;
+
+        static GsonPermit of(PermitData permit) {
+            GsonPermit copy = new GsonPermit();
+            copy.permitNumber = permit.permitNumber;
+            copy.plateNumber = permit.plateNumber;
+            copy.vehicleName = permit.vehicleName;
+            copy.validFrom = permit.validFrom;
+            copy.validTo = permit.validTo;
+            copy.barcodeValue = permit.barcodeValue;
+            copy.barcodeLabel = permit.barcodeLabel;
+            copy.price = permit.price;
+            copy.displayFlipped = permit.displayFlipped;
+            return copy;
+        }
+    }
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void encodeMatchesReflectiveGson() {
+        PermitData permit = PermitRepositoryTest.permit("T1");
+        assertEquals(gson.toJson(GsonPermit.of(permit)), PermitCodec.encode(permit));
+
+        // Nulls omitted, HTML escaped, flag written
+        permit.vehicleName = null;
+        permit.barcodeLabel = "<PERMIT & 1299>";
+        permit = permit.withDisplayFlipped(true);
+        assertEquals(gson.toJson(GsonPermit.of(permit)), PermitCodec.encode(permit));
+    }
+
+    @Test
+    public void decodeReadsWhatGsonAccepted() throws Exception {
+        String json = "{\"permitNumber\":12345,\"plateNumber\":\"CTNR713\",\"unknown\":{\"a\":[1,2]},"
+            + "\"amountPaid\":\"$50.00\",\"vehicleName\":null,\"displayFlipped\":\"true\"}";
+        PermitData permit = PermitCodec.decode(json);
+        assertEquals("12345", permit.permitNumber);
+        assertEquals("CTNR713", permit.plateNumber);
+        assertEquals("$50.00", permit.price);
+        assertNull(permit.vehicleName);
+        assertTrue(permit.displayFlipped);
+
+        assertNull(PermitCodec.decode(""));
+        assertNull(PermitCodec.decode("null"));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void malformedJsonIsAnIOException() throws Exception {
+        PermitCodec.decode("{\"permitNumber\":");
+    }
+
+    // Round trip cost against reflective Gson: time and bytes allocated per op.
+    // Wall-clock timing, so it is opt-in: remove @Ignore to run it on a quiet machine.
+    @Ignore("benchmark")
+    @Test
+    public void codecIsNoSlowerThanReflectiveGson() throws Exception {
+        PermitData permit = PermitRepositoryTest.permit("T1");
+        GsonPermit reflective = GsonPermit.of(permit);
+        int iterations = 100_000;
+
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {  // warm-up
+            sink += PermitCodec.decode(PermitCodec.encode(permit)).permitNumber.length();
+            sink += gson.fromJson(gson.toJson(reflective), GsonPermit.class).permitNumber.length();
+        }
+
+        long[] codec = measure(() -> PermitCodec.decode(PermitCodec.encode(permit)).permitNumber.length(), iterations);
+        long[] reflect = measure(() -> gson.fromJson(gson.toJson(reflective), GsonPermit.class).permitNumber.length(), iterations);
+
+        String result = "codec: " + codec[0] / iterations + " ns/op, " + codec[1] / iterations
+            + " B/op; gson: " + reflect[0] / iterations + " ns/op, " + reflect[1] / iterations
+            + " B/op (" + sink + ")";
+        assertTrue(result, codec[0] < reflect[0] * 3 / 2);
+        if (codec[1] >= 0 && reflect[1] >= 0) {
+            assertTrue(result, codec[1] <= reflect[1]);
+        }
+    }
+
+    interface Op {
+        int run() throws Exception;
+    }
+
+    // {elapsed ns, allocated bytes or -1 if the JVM can't tell}
+    static long[] measure(Op op, int iterations) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) threads : null;
+        long id = Thread.currentThread().getId();
+        long bytesBefore = allocations != null ? allocations.getThreadAllocatedBytes(id) : -1;
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {
+            sink += op.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocations != null ? allocations.getThreadAllocatedBytes(id) - bytesBefore : -1;
+        assertTrue(sink > 0);  // keeps the loop from being optimized away
+        return new long[] {elapsed, bytes};
+    }
+}
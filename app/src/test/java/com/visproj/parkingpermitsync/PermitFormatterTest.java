@@ -0,0 +1,130 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class PermitFormatterTest {
+    private static final ZoneId ZONE = ZoneId.of("America/Toronto");
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    static ParsedPermit parsed(String validFrom, String validTo) {
+        PermitData permit = new PermitData("T1", "CTNR713", validFrom, validTo, "1234567999", "PERMIT 1299");
+        return ParsedPermit.of(permit, ZONE);
+    }
+
+    @Test
+    public void sameMonth() {
+        assertEquals("Jan 7 - 14, 2026",
+            PermitFormatter.formatRange(parsed("Jan 07, 2026: 16:00", "Jan 14, 2026: 23:59"), ZONE));
+    }
+
+    @Test
+    public void sameYear() {
+        assertEquals("Jan 30 - Feb 6, 2026",
+            PermitFormatter.formatRange(parsed("Jan 30, 2026: 00:00", "Feb 06, 2026: 23:59"), ZONE));
+    }
+
+    @Test
+    public void crossYear() {
+        assertEquals("Dec 30, 2025 - Jan 6, 2026",
+            PermitFormatter.formatRange(parsed("Dec 30, 2025: 00:00", "Jan 06, 2026: 23:59"), ZONE));
+    }
+
+    @Test
+    public void unparseableDatesFallBackToTheText() {
+        // Everything after the last ':' goes, as the status card always did
+        ParsedPermit parsed = parsed("Soon: TBD", "Later");
+        assertEquals("Soon - Later", PermitFormatter.formatRange(parsed, ZONE));
+    }
+
+    // Same text the SimpleDateFormat code it replaced produced
+    @Test
+    public void matchesTheOldFormatter() {
+        String[][] ranges = {
+            {"Jan 07, 2026: 16:00", "Jan 14, 2026: 23:59"},
+            {"Jan 30, 2026: 00:00", "Feb 06, 2026: 23:59"},
+            {"Dec 30, 2025: 00:00", "Jan 06, 2026: 23:59"},
+            {"Mar 05, 2026: 00:00", "Mar 11, 2026: 23:59"},  // across the DST change
+        };
+        for (String[] range : ranges) {
+            ParsedPermit parsed = parsed(range[0], range[1]);
+            assertEquals(oldFormatRange(parsed), PermitFormatter.formatRange(parsed, ZONE));
+        }
+    }
+
+    @Test
+    public void badgeThresholds() {
+        ParsedPermit parsed = parsed("Jan 08, 2026: 00:00", "Jan 14, 2026: 23:59");
+        long to = parsed.validToMillis;
+        long startOfLastDay = to - (24 * HOUR_MS - 60_000);
+        assertEquals(PermitFormatter.Badge.CURRENT, PermitFormatter.badge(parsed, to - 3 * 24 * HOUR_MS, ZONE));
+        assertEquals(PermitFormatter.Badge.EXPIRING, PermitFormatter.badge(parsed, startOfLastDay - 1, ZONE));
+        assertEquals(PermitFormatter.Badge.EXPIRING_TODAY, PermitFormatter.badge(parsed, startOfLastDay, ZONE));
+        assertEquals(PermitFormatter.Badge.EXPIRING_TODAY, PermitFormatter.badge(parsed, to, ZONE));
+        assertEquals(PermitFormatter.Badge.EXPIRED, PermitFormatter.badge(parsed, to + 1, ZONE));
+    }
+
+    // Memoized range against building it with SimpleDateFormat each time.
+    // Wall-clock timing, so it is opt-in: remove @Ignore to run it on a quiet machine.
+    @Ignore("benchmark")
+    @Test
+    public void cachedRangeIsMuchCheaperThanTheOldFormatter() {
+        ParsedPermit parsed = parsed("Jan 30, 2026: 00:00", "Feb 06, 2026: 23:59");
+        int iterations = 50_000;
+
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {  // warm-up
+            sink += PermitFormatter.formatRange(parsed, ZONE).length();
+            sink += oldFormatRange(parsed).length();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += PermitFormatter.formatRange(parsed, ZONE).length();
+        }
+        long cachedNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += oldFormatRange(parsed).length();
+        }
+        long oldNs = System.nanoTime() - start;
+
+        assertTrue("formatRange: " + cachedNs / iterations + " ns/op, SimpleDateFormat: "
+            + oldNs / iterations + " ns/op (" + sink + ")", cachedNs * 10 < oldNs);
+    }
+
+    // The range code PermitFormatter replaced, in the test zone
+    private static String oldFormatRange(ParsedPermit parsed) {
+        Date from = new Date(parsed.validFromMillis);
+        Date to = new Date(parsed.validToMillis);
+        SimpleDateFormat yearFormat = format("yyyy");
+        SimpleDateFormat monthFormat = format("MMM");
+        String fromText;
+        String toText = format("MMM d, yyyy").format(to);
+        if (!yearFormat.format(from).equals(yearFormat.format(to))) {
+            fromText = format("MMM d, yyyy").format(from);
+        } else {
+            fromText = format("MMM d").format(from);
+            if (monthFormat.format(from).equals(monthFormat.format(to))) {
+                toText = format("d, yyyy").format(to);
+            }
+        }
+        return fromText + " - " + toText;
+    }
+
+    private static SimpleDateFormat format(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone(ZONE));
+        return format;
+    }
+}
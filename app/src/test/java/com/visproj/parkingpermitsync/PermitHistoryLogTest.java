@@ -0,0 +1,138 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+public class PermitHistoryLogTest {
+    private File dir;
+    private PermitHistoryLog log;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("history-test").toFile();
+        dir.deleteOnExit();
+        log = new PermitHistoryLog(dir);
+    }
+
+    private File logFile() {
+        return new File(dir, "permit_history.log");
+    }
+
+    private static PermitData permit(int number) {
+        return PermitRepositoryTest.permit("T" + number);
+    }
+
+    // Read straight after append, before the writer thread has necessarily run
+    @Test
+    public void appendIsVisibleToTheNextRead() {
+        log.append(permit(1), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(1, log.size());
+        log.append(permit(2), PermitHistoryLog.SOURCE_DISPLAYED);
+        PermitHistoryLog.Entry newest = log.getLatest(0);
+        assertEquals("T2", newest.permit.permit.permitNumber);
+        assertEquals(PermitHistoryLog.SOURCE_DISPLAYED, newest.source);
+        assertEquals("T1", log.getLatest(1).permit.permit.permitNumber);
+    }
+
+    @Test
+    public void duplicatesAreDroppedWhateverTheFlip() {
+        log.append(permit(1), PermitHistoryLog.SOURCE_FETCHED);
+        log.append(permit(1), PermitHistoryLog.SOURCE_DISPLAYED);
+        log.append(permit(1).withDisplayFlipped(true), PermitHistoryLog.SOURCE_DISPLAYED);
+        assertEquals(1, log.size());
+        assertEquals(PermitHistoryLog.SOURCE_FETCHED, log.getLatest(0).source);
+    }
+
+    @Test
+    public void reopenedLogHasTheSameEntriesAndDedupe() {
+        for (int i = 1; i <= 3; i++) {
+            log.append(permit(i), PermitHistoryLog.SOURCE_FETCHED);
+        }
+        assertEquals(3, log.size());
+
+        PermitHistoryLog reopened = new PermitHistoryLog(dir);
+        assertEquals(3, reopened.size());
+        List<ParsedPermit> latest = reopened.latest(3);
+        assertEquals("T3", latest.get(0).permit.permitNumber);
+        assertEquals("T1", latest.get(2).permit.permitNumber);
+        reopened.append(permit(2), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(3, reopened.size());
+    }
+
+    // A crash mid-append leaves a partial record; it is cut off and appends carry on
+    @Test
+    public void tornTailIsTruncatedOnLoad() throws Exception {
+        log.append(permit(1), PermitHistoryLog.SOURCE_FETCHED);
+        log.append(permit(2), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(2, log.size());
+        long intact = logFile().length();
+        try (FileOutputStream out = new FileOutputStream(logFile(), true)) {
+            out.write(new byte[] {0, 0, 1, 0, 0, 0, 1});
+        }
+
+        PermitHistoryLog reopened = new PermitHistoryLog(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(intact, logFile().length());
+        reopened.append(permit(3), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(3, reopened.size());
+        assertEquals("T3", new PermitHistoryLog(dir).getLatest(0).permit.permit.permitNumber);
+    }
+
+    @Test
+    public void compactionKeepsTheNewestAndForgetsTheDropped() {
+        int total = PermitHistoryLog.MAX_ENTRIES + PermitHistoryLog.COMPACT_SLACK + 1;
+        for (int i = 0; i < total; i++) {
+            log.append(permit(i), PermitHistoryLog.SOURCE_FETCHED);
+        }
+        assertEquals(PermitHistoryLog.MAX_ENTRIES, log.size());
+        // Offsets were rebased onto the rewritten file
+        assertEquals("T" + (total - 1), log.getLatest(0).permit.permit.permitNumber);
+        int oldestKept = total - PermitHistoryLog.MAX_ENTRIES;
+        assertEquals("T" + oldestKept,
+            log.getLatest(PermitHistoryLog.MAX_ENTRIES - 1).permit.permit.permitNumber);
+
+        // Still in the log: a duplicate. Dropped by compaction: new again.
+        log.append(permit(oldestKept), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(PermitHistoryLog.MAX_ENTRIES, log.size());
+        log.append(permit(0), PermitHistoryLog.SOURCE_FETCHED);
+        assertEquals(PermitHistoryLog.MAX_ENTRIES + 1, log.size());
+        assertEquals("T0", log.getLatest(0).permit.permit.permitNumber);
+
+        PermitHistoryLog reopened = new PermitHistoryLog(dir);
+        assertEquals(PermitHistoryLog.MAX_ENTRIES + 1, reopened.size());
+        assertEquals("T" + oldestKept,
+            reopened.getLatest(PermitHistoryLog.MAX_ENTRIES).permit.permit.permitNumber);
+    }
+
+    // Large records pass MAX_BYTES well under MAX_ENTRIES; compaction drops by size
+    @Test
+    public void compactionAlsoBoundsTheFileSize() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            name.append('x');
+        }
+        int total = 200;
+        for (int i = 0; i < total; i++) {
+            PermitData permit = permit(i);
+            permit.vehicleName = name.toString();
+            log.append(permit, PermitHistoryLog.SOURCE_FETCHED);
+        }
+
+        int size = log.size();
+        assertTrue("kept " + size, size > 0 && size < total);
+        long length = logFile().length();
+        assertTrue("file is " + length + " bytes",
+            length <= PermitHistoryLog.MAX_BYTES + PermitHistoryLog.COMPACT_SLACK_BYTES);
+        assertEquals("T" + (total - 1), log.getLatest(0).permit.permit.permitNumber);
+        assertEquals("T" + (total - size), log.getLatest(size - 1).permit.permit.permitNumber);
+        assertEquals(size, new PermitHistoryLog(dir).size());
+    }
+}
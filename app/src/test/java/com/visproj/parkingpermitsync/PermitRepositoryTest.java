@@ -0,0 +1,203 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PermitRepositoryTest {
+    private FakeContext context;
+    private PermitRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new FakeContext();
+        repository = new PermitRepository(context);
+    }
+
+    static PermitData permit(String number) {
+        PermitData permit = new PermitData(number, "CTNR713", "Jan 08, 2026: 00:00",
+            "Jan 14, 2026: 23:59", "1234567999", "PERMIT 1299");
+        permit.vehicleName = "Honda Civic";
+        permit.price = "$50.00";
+        return permit;
+    }
+
+    @Test
+    public void gettersReturnTheCachedInstanceUntilASetterReplacesIt() {
+        repository.savePermit(permit("T1"));
+        ParsedPermit first = repository.getParsedPermit();
+        assertSame(first, repository.getParsedPermit());
+        assertSame(first.permit, repository.getPermit());
+
+        repository.savePermit(permit("T2"));
+        ParsedPermit second = repository.getParsedPermit();
+        assertNotSame(first, second);
+        assertEquals("T2", second.permit.permitNumber);
+        // The replaced permit moved to previous without a re-parse
+        assertSame(first, repository.getParsedPreviousPermit());
+    }
+
+    @Test
+    public void aFreshInstanceReadsWhatWasStored() throws Exception {
+        repository.savePermit(permit("T1"));
+        PermitRepository reopened = new PermitRepository(context);
+        assertEquals("T1", reopened.getPermit().permitNumber);
+        assertEquals(5000, reopened.getParsedPermit().priceCents);
+    }
+
+    // Getter cost: a field read now, against the prefs lookup + JSON parse it replaced.
+    // Wall-clock timing, so it is opt-in: remove @Ignore to run it on a quiet machine.
+    @Ignore("benchmark")
+    @Test
+    public void cachedGetterIsMuchCheaperThanAParse() throws Exception {
+        repository.savePermit(permit("T1"));
+        String json = PermitCodec.encode(permit("T1"));
+        int iterations = 200_000;
+
+        long sink = 0;
+        for (int i = 0; i < iterations; i++) {  // warm-up
+            sink += repository.getPermit().permitNumber.length();
+            sink += ParsedPermit.of(PermitCodec.decode(json)).priceCents;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += repository.getPermit().permitNumber.length();
+        }
+        long getterNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += ParsedPermit.of(PermitCodec.decode(json)).priceCents;
+        }
+        long parseNs = System.nanoTime() - start;
+
+        assertTrue("getPermit: " + getterNs / iterations + " ns/op, parse: " + parseNs / iterations
+            + " ns/op (" + sink + ")", getterNs * 10 < parseNs);
+    }
+
+    // Alarm and UI failing at once must each count, one disk commit apiece
+    @Test
+    public void concurrentIncrementsAreNeverLost() throws Exception {
+        int threads = 8;
+        int perThread = 2_000;
+        FakeContext.Prefs prefs = context.prefs.get("permit_data");
+        long commitsBefore = repository.getCommitCount();
+        int diskBefore = prefs.commits.get();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            done.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    repository.incrementSyncFailures();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : done) {
+            future.get();
+        }
+        pool.shutdown();
+
+        int total = threads * perThread;
+        assertEquals(total, repository.getConsecutiveSyncFailures());
+        assertEquals("one commit per logical update", total, repository.getCommitCount() - commitsBefore);
+        assertEquals("one disk write per logical update", total, prefs.commits.get() - diskBefore);
+    }
+
+    // Counter returns are unique: every caller sees its own new value
+    @Test
+    public void incrementReturnsDistinctCounts() throws Exception {
+        int threads = 4;
+        int perThread = 500;
+        boolean[] seen = new boolean[threads * perThread + 1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            done.add(pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    int value = repository.incrementSyncFailures();
+                    synchronized (seen) {
+                        assertTrue("duplicate count " + value, !seen[value]);
+                        seen[value] = true;
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        pool.shutdown();
+    }
+
+    // A sync's related keys land in a single commit
+    @Test
+    public void transactionIsOneCommit() {
+        repository.incrementSyncFailures();
+        FakeContext.Prefs prefs = context.prefs.get("permit_data");
+        long commitsBefore = repository.getCommitCount();
+        int diskBefore = prefs.commits.get();
+
+        repository.edit()
+            .savePermit(permit("T9"))
+            .setNewPermitDetectedTime(1234L)
+            .resetSyncFailures()
+            .commit();
+
+        assertEquals(1, repository.getCommitCount() - commitsBefore);
+        assertEquals(1, prefs.commits.get() - diskBefore);
+        assertEquals("T9", repository.getPermit().permitNumber);
+        assertEquals(1234L, repository.getNewPermitDetectedTime());
+        assertEquals(0, repository.getConsecutiveSyncFailures());
+    }
+
+    // PermitLifecycle's days-behind count only moves when it hears about the detected time
+    @Test
+    public void detectedTimePublishesADisplayChange() {
+        repository.savePermit(permit("T1"));
+        List<PermitRepository.Change> changes = Collections.synchronizedList(new ArrayList<>());
+        repository.addListener(changes::add, Runnable::run);
+
+        repository.setNewPermitDetectedTime(1234L);
+        assertTrue(changes.contains(PermitRepository.Change.DISPLAY_PERMIT));
+
+        changes.clear();
+        repository.clearNewPermitDetectedTime();
+        assertTrue(changes.contains(PermitRepository.Change.DISPLAY_PERMIT));
+    }
+
+    // The flip toggle only sends SETTINGS to a display that announced it reads them
+    @Test
+    public void displayCapabilitiesAreLegacyUntilAnnounced() {
+        assertFalse(repository.getDisplayCapabilities().supports(DisplayCapabilities.FEATURE_SETTINGS));
+        List<PermitRepository.Change> changes = Collections.synchronizedList(new ArrayList<>());
+        repository.addListener(changes::add, Runnable::run);
+
+        DisplayCapabilities announced = new DisplayCapabilities(1,
+            DisplayCapabilities.FEATURE_ACK | DisplayCapabilities.FEATURE_SETTINGS, "2.1");
+        repository.setDisplayCapabilities(announced);
+        repository.setDisplayCapabilities(announced);
+        assertEquals(Collections.singletonList(PermitRepository.Change.DISPLAY_PERMIT), changes);
+        assertTrue(new PermitRepository(context).getDisplayCapabilities()
+            .supports(DisplayCapabilities.FEATURE_SETTINGS));
+    }
+}
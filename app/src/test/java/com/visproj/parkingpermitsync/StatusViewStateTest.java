@@ -0,0 +1,119 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StatusViewStateTest {
+
+    private static ParsedPermit parsed(String number, String price) {
+        PermitData permit = PermitRepositoryTest.permit(number);
+        permit.price = price;
+        return ParsedPermit.of(permit);
+    }
+
+    private static PermitLifecycle.Snapshot snapshot(ParsedPermit current, ParsedPermit scheduled,
+                                                     String estimateRange) {
+        return new PermitLifecycle.Snapshot(current, scheduled, PermitFormatter.Badge.CURRENT,
+            estimateRange, -1, Long.MAX_VALUE);
+    }
+
+    private static StatusViewState state(PermitLifecycle.Snapshot snapshot, ParsedPermit previous,
+                                         long lastSyncTime) {
+        return StatusViewState.of(snapshot, previous, false, lastSyncTime, 0, true, false);
+    }
+
+    @Test
+    public void noPermitShowsPlaceholders() {
+        StatusViewState state = StatusViewState.of(snapshot(null, null, null), null,
+            false, 0, 0, false, false);
+        assertEquals("No permit", state.permitNumber);
+        assertEquals("--", state.dates);
+        assertEquals("--", state.vehicle);
+        assertEquals("None", state.badgeLabel);
+        assertEquals(R.drawable.badge_orange, state.badgeBackground);
+        assertNull(state.price);
+        assertNull(state.scheduledNumber);
+        assertEquals("Disable Battery Optimization", state.batteryButton);
+
+        assertEquals("Fix Battery Settings", StatusViewState.of(snapshot(null, null, null), null,
+            false, 0, 0, false, true).batteryButton);
+        assertNull(StatusViewState.of(snapshot(null, null, null), null,
+            false, 0, 0, true, true).batteryButton);
+    }
+
+    @Test
+    public void currentPermitWithPriceChange() {
+        StatusViewState state = state(snapshot(parsed("T2", "$50.00"), null, null),
+            parsed("T1", "$47.60"), 0);
+        assertEquals("T2", state.permitNumber);
+        assertEquals("Honda Civic (CTNR713)", state.vehicle);
+        assertEquals("$50.00", state.price);
+        assertEquals("(+$2.40)", state.priceChange);
+        assertTrue(state.priceIncreased);
+        assertEquals("Current", state.badgeLabel);
+
+        // Same price: no change shown
+        assertNull(state(snapshot(parsed("T2", "$50.00"), null, null), parsed("T1", "$50.00"), 0).priceChange);
+        // No price: the price view is hidden
+        assertNull(state(snapshot(parsed("T2", ""), null, null), null, 0).price);
+    }
+
+    @Test
+    public void scheduledPermitOrEstimateFillsTheSecondCard() {
+        PermitData unnamed = PermitRepositoryTest.permit("T3");
+        unnamed.vehicleName = null;
+        unnamed.price = "";
+        ParsedPermit scheduled = ParsedPermit.of(unnamed);
+        StatusViewState state = state(snapshot(parsed("T2", "$50.00"), scheduled, null), null, 0);
+        assertEquals("T3", state.scheduledNumber);
+        assertEquals("Vehicle (CTNR713)", state.scheduledVehicle);
+        assertNull(state.scheduledPrice);
+
+        StatusViewState estimate = state(snapshot(parsed("T2", "$50.00"), null, "Jan 15 - 21, 2026"), null, 0);
+        assertEquals("Pending", estimate.scheduledNumber);
+        assertEquals("Jan 15 - 21, 2026", estimate.scheduledDates);
+        assertEquals("Honda Civic (CTNR713)", estimate.scheduledVehicle);
+        assertEquals("~$50.00", estimate.scheduledPrice);
+    }
+
+    // The fragment only rebinds the groups whose same* check fails
+    @Test
+    public void diffFlagsOnlyTheChangedGroups() {
+        ParsedPermit current = parsed("T2", "$50.00");
+        ParsedPermit previous = parsed("T1", "$47.60");
+        StatusViewState first = state(snapshot(current, null, null), previous, 1000);
+
+        StatusViewState same = state(snapshot(current, null, null), previous, 1000);
+        assertTrue(same.samePermit(first));
+        assertTrue(same.samePrice(first));
+        assertTrue(same.sameBadge(first));
+        assertTrue(same.sameScheduled(first));
+        assertTrue(same.sameSyncTimes(first));
+        assertTrue(same.sameBattery(first));
+
+        StatusViewState synced = state(snapshot(current, null, null), previous, 2000);
+        assertFalse(synced.sameSyncTimes(first));
+        assertTrue(synced.samePermit(first));
+        assertTrue(synced.samePrice(first));
+
+        StatusViewState repriced = state(snapshot(current, null, null), parsed("T1", "$50.00"), 1000);
+        assertFalse(repriced.samePrice(first));
+        assertTrue(repriced.samePermit(first));
+
+        StatusViewState scheduled = state(snapshot(current, parsed("T3", ""), null), previous, 1000);
+        assertFalse(scheduled.sameScheduled(first));
+        assertTrue(scheduled.sameBadge(first));
+
+        // Nothing applied yet: everything is bound
+        assertFalse(first.samePermit(null));
+        assertFalse(first.samePrice(null));
+        assertFalse(first.sameBadge(null));
+        assertFalse(first.sameScheduled(null));
+        assertFalse(first.sameSyncTimes(null));
+        assertFalse(first.sameBattery(null));
+    }
+}
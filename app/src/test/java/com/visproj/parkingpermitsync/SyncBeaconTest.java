@@ -0,0 +1,76 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class SyncBeaconTest {
+    // Legacy advertising PDU payload, the only kind every display can scan
+    private static final int LEGACY_ADVERTISING_BYTES = 31;
+
+    @Test
+    public void layout() {
+        byte[] beacon = SyncBeacon.encode(0x12345678, 0x0102, true, false);
+        assertArrayEquals(new byte[] {
+            SyncBeacon.FORMAT,
+            0x78, 0x56, 0x34, 0x12,   // hash, little-endian
+            0x02, 0x01,               // settings version, little-endian
+            0x01                      // flipped
+        }, beacon);
+        assertEquals(SyncBeacon.SIZE, beacon.length);
+    }
+
+    @Test
+    public void hashAndVersionReadBackLittleEndian() {
+        // High bits set, so a sign-extension slip would show
+        int hash = 0xFEDCBA98;
+        int version = 0xFFFE;
+        ByteBuffer buffer = ByteBuffer.wrap(SyncBeacon.encode(hash, version, false, false))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(SyncBeacon.FORMAT, buffer.get());
+        assertEquals(hash, buffer.getInt());
+        assertEquals(version, buffer.getShort() & 0xFFFF);
+    }
+
+    @Test
+    public void flagsMatchTheSettingsCharacteristic() {
+        boolean[] values = {false, true};
+        for (boolean flipped : values) {
+            for (boolean persistentLink : values) {
+                byte flags = SyncBeacon.encode(0, 0, flipped, persistentLink)[7];
+                assertEquals(flipped, (flags & 0x01) != 0);
+                assertEquals(persistentLink, (flags & 0x02) != 0);
+                assertEquals(0, flags & ~0x03);
+                assertEquals(flags, DisplaySettings.encode(0, flipped, persistentLink)[3]);
+            }
+        }
+    }
+
+    // What BleGattService advertises: flags, the 16-bit service UUID and its service data.
+    // The device name went to the scan response, so this has to fit on its own.
+    @Test
+    public void fitsALegacyAdvertisement() {
+        int flags = 3;                                    // length, type, flags
+        int serviceUuid = 2 + 2;                          // length, type, uuid16
+        int serviceData = 2 + 2 + SyncBeacon.SIZE;        // length, type, uuid16, beacon
+        assertEquals(19, flags + serviceUuid + serviceData);
+        assertTrue(flags + serviceUuid + serviceData <= LEGACY_ADVERTISING_BYTES);
+        assertEquals(SyncBeacon.SIZE, SyncBeacon.encode(-1, 0xFFFF, true, true).length);
+    }
+
+    @Test
+    public void settingsLayout() {
+        assertArrayEquals(new byte[] {DisplaySettings.FORMAT, 0x34, 0x12, 0x03},
+            DisplaySettings.encode(0x1234, true, true));
+        assertArrayEquals(new byte[] {DisplaySettings.FORMAT, 0, 0, 0},
+            DisplaySettings.encode(0, false, false));
+        // The version wraps at 16 bits, like PermitRepository's counter
+        assertArrayEquals(new byte[] {DisplaySettings.FORMAT, (byte) 0xFF, (byte) 0xFF, 0x01},
+            DisplaySettings.encode(0xFFFF, true, false));
+    }
+}
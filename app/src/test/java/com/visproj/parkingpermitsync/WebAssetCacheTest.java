@@ -0,0 +1,143 @@
+package com.visproj.parkingpermitsync;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.OkHttpClient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Which responses may land in the shared cache, against a local HTTP server standing
+// in for the History host
+public class WebAssetCacheTest {
+    private static final String HOST = "127.0.0.1";
+    private static final byte[] CSS = "body{color:red}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String base;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> cookies = new CopyOnWriteArrayList<>();
+    private WebAssetCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(HOST, 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        base = "http://" + HOST + ":" + server.getAddress().getPort();
+        File dir = Files.createTempDirectory("web-cache-test").toFile();
+        dir.deleteOnExit();
+        cache = new WebAssetCache(dir, 64 * 1024, HOST, new OkHttpClient());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    // /style.css is a plain 200; the others each break one of the storing rules
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+        if (cookie != null) cookies.add(cookie);
+
+        String path = exchange.getRequestURI().getPath();
+        int code = 200;
+        exchange.getResponseHeaders().set("Content-Type", "text/css; charset=utf-8");
+        if (path.equals("/redirect.css")) {
+            code = 302;
+            exchange.getResponseHeaders().set("Location", base + "/login/");
+        } else if (path.equals("/cookie.css")) {
+            exchange.getResponseHeaders().set("Set-Cookie", "session=abc");
+        } else if (path.equals("/private.css")) {
+            exchange.getResponseHeaders().set("Cache-Control", "private, max-age=60");
+        }
+        byte[] body = code == 200 ? CSS : new byte[0];
+        exchange.sendResponseHeaders(code, body.length > 0 ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Map<String, String> headers() {
+        return Collections.singletonMap("Cookie", "session=user1");
+    }
+
+    @Test
+    public void onlyStaticAssetsOnTheHostAreCacheable() {
+        assertTrue(cache.isCacheable("GET", base + "/static/app.css"));
+        assertTrue(cache.isCacheable("GET", base + "/img/logo.PNG"));
+        assertTrue(cache.isCacheable("get", base + "/fonts/inter.woff2"));
+
+        // Pages can be per-user
+        assertFalse(cache.isCacheable("GET", base + "/history/"));
+        assertFalse(cache.isCacheable("GET", base + "/history"));
+        assertFalse(cache.isCacheable("GET", base + "/settings/index.html"));
+        assertFalse(cache.isCacheable("POST", base + "/static/app.css"));
+        assertFalse(cache.isCacheable("GET", "http://example.com/static/app.css"));
+        assertFalse(cache.isCacheable("GET", "ftp://" + HOST + "/static/app.css"));
+    }
+
+    @Test
+    public void aStaticAssetIsFetchedWithoutTheCookieThenServedFromDisk() {
+        WebAssetCache.Asset miss = cache.get(base + "/style.css", headers());
+        assertNotNull(miss);
+        assertArrayEquals(CSS, miss.body);
+        assertEquals("text/css", miss.mimeType);
+        assertEquals("utf-8", miss.encoding);
+        assertTrue("the session cookie must not be forwarded", cookies.isEmpty());
+
+        WebAssetCache.Asset hit = cache.get(base + "/style.css", headers());
+        assertNotNull(hit);
+        assertArrayEquals(CSS, hit.body);
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void aRedirectIsLeftToTheWebViewAndNotStored() {
+        assertNull(cache.get(base + "/redirect.css", headers()));
+        assertNull(cache.get(base + "/redirect.css", headers()));
+        // Not followed to the login page, and fetched again rather than served from disk
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void aResponseThatSetsACookieIsNotStored() {
+        assertNull(cache.get(base + "/cookie.css", headers()));
+        assertNull(cache.get(base + "/cookie.css", headers()));
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void aPrivateResponseIsServedButNotStored() {
+        assertNotNull(cache.get(base + "/private.css", headers()));
+        assertNotNull(cache.get(base + "/private.css", headers()));
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getHits());
+    }
+}